@@ -0,0 +1,230 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * This class is an adaptive huffman code (the FGK algorithm). Encoder and
+ * decoder both start from a tree holding only the NYT ("not yet
+ * transmitted") leaf, and update their trees in the same way after every
+ * symbol, so the code follows the data seen so far and nothing needs to
+ * be counted in advance or stored in a header.
+ *
+ * A symbol seen for the first time is sent as the code of the NYT leaf,
+ * followed by the symbol in ESCAPE_BITS bits. The end of the data is the
+ * extra symbol END sent the same way, and the last byte is padded with
+ * zeroes.
+ *
+ * The tree keeps the sibling property: every node has a number, numbers
+ * never decrease with weight, and siblings have neighbouring numbers. The
+ * root has the highest number.
+ */
+public class AdaptiveHuffman {
+    // The symbol marking the end of the data, after the 256 byte values
+    public static final int END = Histogram.SYMBOLS;
+
+    // Bits used to send a symbol that isn't in the tree yet
+    private static final int ESCAPE_BITS = 9;
+
+    private static final int MAX_NODES = 2 * (END + 1) - 1;
+
+    // Node 0 is the root, every other node is made when the NYT leaf splits
+    private final long[] weights = new long[MAX_NODES];
+    private final int[] parents = new int[MAX_NODES];
+    private final int[] lefts = new int[MAX_NODES];
+    private final int[] rights = new int[MAX_NODES];
+    private final int[] symbols = new int[MAX_NODES];
+    private final int[] numbers = new int[MAX_NODES];
+
+    // The node with each number, and the leaf of each symbol, -1 if it hasn't been seen
+    private final int[] nodeAt = new int[MAX_NODES];
+    private final int[] leaves = new int[END + 1];
+
+    private int nyt;
+    private int nodeCount;
+
+    // Codes are worked out from the leaf up, in chunks of 64 bits
+    private final long[] chunks = new long[MAX_NODES / 64 + 1];
+
+    public AdaptiveHuffman() {
+        Arrays.fill(leaves, -1);
+        parents[0] = -1;
+        lefts[0] = -1;
+        rights[0] = -1;
+        symbols[0] = -1;
+        numbers[0] = MAX_NODES - 1;
+        nodeAt[MAX_NODES - 1] = 0;
+        nyt = 0;
+        nodeCount = 1;
+    }
+
+    /**
+     * Writes the code of symbol, and then updates the tree for it
+     *
+     * @param symbol A byte value from 0 to 255, or END
+     */
+    public void write(int symbol, BitWriter out) throws IOException {
+        int leaf = leaves[symbol];
+        if (leaf == -1) {
+            writePath(nyt, out);
+            out.write(symbol, ESCAPE_BITS);
+        } else {
+            writePath(leaf, out);
+        }
+        if (symbol != END) update(symbol);
+    }
+
+    /**
+     * Reads the next symbol, and then updates the tree for it
+     *
+     * @return A byte value from 0 to 255, or END
+     */
+    public int read(BitReader in) throws IOException {
+        int node = 0;
+        while (symbols[node] == -1 && node != nyt) {
+            int bit = in.readBit();
+            if (bit == -1) throw new IOException("Adaptive huffman data ends without an end symbol");
+            node = bit == 0 ? lefts[node] : rights[node];
+        }
+
+        int symbol;
+        if (node == nyt) {
+            symbol = 0;
+            for (int i = 0; i < ESCAPE_BITS; i++) {
+                int bit = in.readBit();
+                if (bit == -1) throw new IOException("Adaptive huffman data ends without an end symbol");
+                symbol = (symbol << 1) | bit;
+            }
+            if (symbol > END || (symbol < END && leaves[symbol] != -1)) {
+                throw new IOException("Corrupt adaptive huffman data");
+            }
+        } else {
+            symbol = symbols[node];
+        }
+        if (symbol != END) update(symbol);
+        return symbol;
+    }
+
+    /**
+     * Compresses everything left in in, ending with END. Neither stream is closed.
+     */
+    public static void encode(InputStream in, OutputStream out) throws IOException {
+        AdaptiveHuffman code = new AdaptiveHuffman();
+        BitWriter bits = new BitWriter(out);
+        byte[] buffer = new byte[1 << 16];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                code.write(buffer[i] & 0xFF, bits);
+            }
+        }
+        code.write(END, bits);
+        bits.finish();
+    }
+
+    /**
+     * Decompresses from in until END, writing the bytes to out. Neither stream is
+     * closed, and in may have been read past the end of the compressed data.
+     */
+    public static void decode(InputStream in, OutputStream out) throws IOException {
+        AdaptiveHuffman code = new AdaptiveHuffman();
+        BitReader bits = new BitReader(in);
+        byte[] buffer = new byte[1 << 16];
+        int count = 0;
+        int symbol;
+        while ((symbol = code.read(bits)) != END) {
+            buffer[count++] = (byte) symbol;
+            if (count == buffer.length) {
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+        out.write(buffer, 0, count);
+    }
+
+    // Writes the path from the root to node
+    private void writePath(int node, BitWriter out) throws IOException {
+        long code = 0;
+        int length = 0;
+        int full = 0;
+        for (int child = node; parents[child] != -1; child = parents[child]) {
+            if (rights[parents[child]] == child) code |= 1L << length;
+            if (++length == 64) {
+                chunks[full++] = code;
+                code = 0;
+                length = 0;
+            }
+        }
+        // The bits nearest the root were found last
+        if (length > 0) out.write(code, length);
+        while (full > 0) out.write(chunks[--full], 64);
+    }
+
+    // Adds one to the weight of symbol's leaf and all of its ancestors, swapping
+    // nodes along the way to keep the sibling property
+    private void update(int symbol) {
+        int node = leaves[symbol];
+        if (node == -1) node = split(symbol);
+
+        while (node != -1) {
+            // The highest numbered node of the same weight, other than the parent
+            int number = numbers[node];
+            while (number + 1 < MAX_NODES && weights[nodeAt[number + 1]] == weights[node]) number++;
+            if (nodeAt[number] == parents[node]) number--;
+
+            int leader = nodeAt[number];
+            if (leader != node) swap(node, leader);
+            weights[node]++;
+            node = parents[node];
+        }
+    }
+
+    // Turns the NYT leaf into a node with a new NYT leaf on the left and symbol's leaf
+    // on the right, and returns the new leaf
+    private int split(int symbol) {
+        int leaf = nodeCount++;
+        int newNyt = nodeCount++;
+        int number = numbers[nyt];
+
+        for (int child : new int[] { leaf, newNyt }) {
+            parents[child] = nyt;
+            lefts[child] = -1;
+            rights[child] = -1;
+        }
+        symbols[leaf] = symbol;
+        symbols[newNyt] = -1;
+        numbers[leaf] = number - 1;
+        numbers[newNyt] = number - 2;
+        nodeAt[number - 1] = leaf;
+        nodeAt[number - 2] = newNyt;
+        lefts[nyt] = newNyt;
+        rights[nyt] = leaf;
+        leaves[symbol] = leaf;
+
+        nyt = newNyt;
+        return leaf;
+    }
+
+    // Swaps the places of two nodes in the tree, neither being an ancestor of the other
+    private void swap(int a, int b) {
+        int parentA = parents[a];
+        int parentB = parents[b];
+        if (parentA == parentB) {
+            lefts[parentA] = rights[parentA];
+            rights[parentA] = lefts[parentA] == a ? b : a;
+        } else {
+            if (lefts[parentA] == a) lefts[parentA] = b; else rights[parentA] = b;
+            if (lefts[parentB] == b) lefts[parentB] = a; else rights[parentB] = a;
+            parents[a] = parentB;
+            parents[b] = parentA;
+        }
+
+        int number = numbers[a];
+        numbers[a] = numbers[b];
+        numbers[b] = number;
+        nodeAt[numbers[a]] = a;
+        nodeAt[numbers[b]] = b;
+    }
+}
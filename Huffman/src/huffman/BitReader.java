@@ -0,0 +1,122 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class reads bits from an input stream on demand. Bytes are read
+ * through a fixed size buffer into a 64-bit accumulator, so memory use
+ * stays the same no matter how long the stream is.
+ */
+public class BitReader implements Closeable {
+    // Size of the byte buffer
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The most bits that can be peeked at once
+    public static final int MAX_PEEK = 56;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+
+    // Bits read from the buffer but not yet consumed, right aligned
+    private long bits;
+    private int bitCount;
+
+    public BitReader(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Reads the bits of data[offset, offset + length) straight from the array,
+     * without copying it
+     */
+    public BitReader(byte[] data, int offset, int length) {
+        this.in = null;
+        this.buffer = data;
+        this.position = offset;
+        this.limit = offset + length;
+        this.endOfStream = true;
+    }
+
+    /**
+     * Reads the next bit
+     *
+     * @return 0 or 1, or -1 if there are no bits left
+     */
+    public int readBit() throws IOException {
+        if (bitCount == 0) {
+            fill();
+            if (bitCount == 0) return -1;
+        }
+        bitCount--;
+        return (int) (bits >>> bitCount) & 1;
+    }
+
+    /**
+     * Returns the next length bits without consuming them. If fewer than
+     * length bits are left, the missing bits at the end are 0.
+     *
+     * @param length The number of bits to look at, between 1 and MAX_PEEK
+     */
+    public long peek(int length) throws IOException {
+        if (bitCount < length) fill();
+        if (bitCount >= length) {
+            return (bits >>> (bitCount - length)) & (-1L >>> (64 - length));
+        }
+        return (bits << (length - bitCount)) & (-1L >>> (64 - length));
+    }
+
+    /**
+     * Consumes length bits which have already been looked at with peek
+     */
+    public void skip(int length) {
+        bitCount -= length;
+    }
+
+    /**
+     * @return How many bits can be consumed before the end of the stream,
+     * up to MAX_PEEK
+     */
+    public int available() throws IOException {
+        if (bitCount < MAX_PEEK) fill();
+        return Math.min(bitCount, MAX_PEEK);
+    }
+
+    /**
+     * Skips the padding written by writeBitString or BitWriter.writePadding,
+     * which is zeroes and then a one at the start of the first byte
+     */
+    public void skipPadding() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            if (readBit() != 0) return;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) in.close();
+    }
+
+    // Moves bytes into the accumulator until it holds more than MAX_PEEK bits or the stream ends
+    private void fill() throws IOException {
+        while (bitCount <= MAX_PEEK) {
+            if (position == limit) {
+                if (endOfStream) return;
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    endOfStream = true;
+                    return;
+                }
+            }
+            bits = (bits << 8) | (buffer[position++] & 0xFF);
+            bitCount += 8;
+        }
+    }
+}
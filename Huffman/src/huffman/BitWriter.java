@@ -0,0 +1,132 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class writes codes of up to 64 bits to an output stream. Bits are
+ * packed into a 64-bit accumulator, and every full word is copied into a
+ * byte buffer which is written out whenever it fills up, so memory use
+ * stays the same no matter how many bits are written.
+ */
+public class BitWriter implements Closeable {
+    // Size of the byte buffer, must be a multiple of 8
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    // Bits not yet written to the buffer, right aligned
+    private long bits;
+    private int bitCount;
+
+    private long bitsWritten;
+
+    public BitWriter(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize The size of the byte buffer, rounded up to a multiple of 8.
+     * Smaller buffers suit short outputs, which would never fill the default one.
+     */
+    public BitWriter(OutputStream out, int bufferSize) {
+        if (bufferSize < 1) throw new IllegalArgumentException("bufferSize must be at least 1");
+        this.out = out;
+        this.buffer = new byte[(int) Math.min(BUFFER_SIZE, (bufferSize + 7L) & ~7L)];
+    }
+
+    /**
+     * Writes the lowest length bits of code, most significant bit first
+     *
+     * @param code The bits to write, with every bit above length set to 0
+     * @param length The number of bits to write, between 0 and 64
+     */
+    public void write(long code, int length) throws IOException {
+        bitsWritten += length;
+        int free = 64 - bitCount;
+        if (length < free) {
+            bits = (bits << length) | code;
+            bitCount += length;
+            return;
+        }
+
+        // Fill up the accumulator, write it out, and keep the rest of the code
+        int rest = length - free;
+        long word = free == 64 ? code : (bits << free) | (code >>> rest);
+        writeWord(word);
+        bits = rest == 0 ? 0 : code & (-1L >>> (64 - rest));
+        bitCount = rest;
+    }
+
+    /**
+     * Writes the padding used by writeBitString: zeroes and then a one, so that
+     * the padding followed by totalBits bits is a whole number of bytes.
+     * When reading, the 1 signifies the end of padding.
+     *
+     * @param totalBits The number of bits that will be written after the padding
+     */
+    public void writePadding(long totalBits) throws IOException {
+        int padding = 8 - (int) (totalBits % 8);
+        write(1, padding);
+    }
+
+    /**
+     * @return The number of bits written so far, including padding
+     */
+    public long getBitsWritten() {
+        return bitsWritten;
+    }
+
+    /**
+     * Writes out every bit so far, filling the last byte with zeroes if needed.
+     * Should only be called once, when nothing more will be written.
+     */
+    public void finish() throws IOException {
+        // Left align the remaining bits and copy them out a byte at a time
+        int bytes = (bitCount + 7) / 8;
+        long word = bitCount == 0 ? 0 : bits << (64 - bitCount);
+        if (position + bytes > buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        for (int i = 0; i < bytes; i++) {
+            buffer[position++] = (byte) (word >>> (56 - 8 * i));
+        }
+        bits = 0;
+        bitCount = 0;
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    /**
+     * Finishes writing and closes the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeWord(long word) throws IOException {
+        if (position == buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position]     = (byte) (word >>> 56);
+        buffer[position + 1] = (byte) (word >>> 48);
+        buffer[position + 2] = (byte) (word >>> 40);
+        buffer[position + 3] = (byte) (word >>> 32);
+        buffer[position + 4] = (byte) (word >>> 24);
+        buffer[position + 5] = (byte) (word >>> 16);
+        buffer[position + 6] = (byte) (word >>> 8);
+        buffer[position + 7] = (byte) word;
+        position += 8;
+    }
+}
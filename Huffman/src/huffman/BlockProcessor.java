@@ -0,0 +1,195 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is the part of CompressingProcessor and DecompressingProcessor
+ * that follows the Flow protocol. It has one subscriber, and asks upstream
+ * for one chunk at a time, only when the subscriber wants more output and
+ * the chunk before has been used up, so the memory held never depends on
+ * how long the stream is.
+ *
+ * Every signal ends up in drain, which only ever runs on one thread at a
+ * time; a thread that finds it already running leaves a note for the
+ * running one to go around again. The subclass's next is only called from
+ * drain, so it needs no locking of its own.
+ */
+abstract class BlockProcessor implements Flow.Processor<ByteBuffer, ByteBuffer> {
+    private final AtomicInteger work = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super ByteBuffer> downstream;
+
+    // The chunk being worked through, and whether one has been asked for
+    private volatile ByteBuffer input;
+    private volatile boolean requested;
+
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+
+    // Only touched in drain
+    private boolean done;
+
+    /**
+     * Makes the next output chunk, taking as much of input as it needs
+     *
+     * @param input The chunk from upstream, or null if there is none right now
+     * @param ended True if upstream has completed and input is null
+     * @return The next output chunk, or null if more input is needed or nothing is left
+     */
+    abstract ByteBuffer next(ByteBuffer input, boolean ended) throws IOException;
+
+    /**
+     * @return True once the last output chunk has been made
+     */
+    abstract boolean isFinished();
+
+    /**
+     * Drops every buffer, once nothing more will be made
+     */
+    abstract void release();
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) { }
+
+                @Override
+                public void cancel() { }
+            });
+            subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("The number of chunks requested must be positive");
+                } else {
+                    demand.getAndAccumulate(n, (current, added) -> {
+                        long sum = current + added;
+                        return sum < 0 ? Long.MAX_VALUE : sum;
+                    });
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        downstream = subscriber;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer chunk) {
+        if (!requested || input != null) {
+            error = new IllegalStateException("Got a chunk that wasn't asked for");
+        } else {
+            input = chunk;
+            requested = false;
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void drain() {
+        if (work.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super ByteBuffer> subscriber = downstream;
+            Flow.Subscription subscription = upstream;
+            if (subscriber != null && subscription != null && !done) emit(subscriber, subscription);
+            missed = work.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    // Sends as many chunks as are wanted, then asks upstream for more input if it is needed
+    private void emit(Flow.Subscriber<? super ByteBuffer> subscriber, Flow.Subscription subscription) {
+        while (true) {
+            if (cancelled) {
+                terminate(subscription);
+                return;
+            }
+            Throwable failure = error;
+            if (failure != null) {
+                terminate(subscription);
+                subscriber.onError(failure);
+                return;
+            }
+            if (isFinished()) {
+                terminate(subscription);
+                subscriber.onComplete();
+                return;
+            }
+            if (demand.get() == 0) return;
+
+            // Whether upstream is done has to be read before input, which onNext sets first
+            boolean ended = upstreamDone;
+            ByteBuffer chunk = input;
+            ByteBuffer output;
+            try {
+                output = next(chunk, ended && chunk == null);
+            } catch (IOException | RuntimeException e) {
+                error = e;
+                continue;
+            }
+            if (chunk != null && !chunk.hasRemaining()) input = null;
+
+            if (output != null) {
+                if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                subscriber.onNext(output);
+            } else if (!isFinished()) {
+                if (input == null && !upstreamDone && !requested) {
+                    requested = true;
+                    subscription.request(1);
+                }
+                return;
+            }
+        }
+    }
+
+    private void terminate(Flow.Subscription subscription) {
+        done = true;
+        if (!upstreamDone) subscription.cancel();
+        input = null;
+        release();
+    }
+}
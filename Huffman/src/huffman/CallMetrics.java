@@ -0,0 +1,198 @@
+package huffman;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * This class holds the measurements of one encode or decode call, filled
+ * in by the codec while the call runs and handed to CodecMetrics.record at
+ * the end. Phase times only cover the work done on the calling thread, so
+ * they may add up to less than the wall time.
+ *
+ * The allocation estimate is the number of bytes the calling thread
+ * allocated during the call, as the JVM counts them, or -1 where the JVM
+ * doesn't count them.
+ */
+public final class CallMetrics {
+    // Counts the bytes each thread allocates, null if the JVM can't
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private static final CodecMetrics.Phase[] PHASES = CodecMetrics.Phase.values();
+
+    private final CodecMetrics.Operation operation;
+    private final long startNanos = System.nanoTime();
+    private final long startAllocated = allocatedBytes();
+    private final long[] phaseNanos = new long[PHASES.length];
+
+    private long wallNanos;
+    private long bytesIn;
+    private long bytesOut;
+    private int cacheHits;
+    private int cacheMisses;
+    private long allocated = -1;
+
+    CallMetrics(CodecMetrics.Operation operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Adds the time from since to now to phase
+     *
+     * @return Now, for timing the next phase from
+     */
+    long lap(CodecMetrics.Phase phase, long since) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - since;
+        return now;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    void addBytes(long in, long out) {
+        bytesIn += in;
+        bytesOut += out;
+    }
+
+    void cacheHit() {
+        cacheHits++;
+    }
+
+    void cacheMiss() {
+        cacheMisses++;
+    }
+
+    /**
+     * Stops the clock and the allocation count
+     *
+     * @return This
+     */
+    CallMetrics finish() {
+        wallNanos = System.nanoTime() - startNanos;
+        if (startAllocated >= 0) allocated = allocatedBytes() - startAllocated;
+        return this;
+    }
+
+    public CodecMetrics.Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return The time the whole call took, in nanoseconds
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return The time spent in phase, in nanoseconds
+     */
+    public long getPhaseNanos(CodecMetrics.Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return The bytes read: original bytes when encoding, encoded bytes when decoding
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return The bytes written: encoded bytes when encoding, original bytes when decoding
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * @return The number of original bytes coded, which is the number of symbols
+     */
+    public long getOriginalBytes() {
+        if (operation == CodecMetrics.Operation.DECODE) return bytesOut;
+        return operation == CodecMetrics.Operation.ENCODE ? bytesIn : 0;
+    }
+
+    /**
+     * @return The number of encoded bytes written or read
+     */
+    public long getEncodedBytes() {
+        if (operation == CodecMetrics.Operation.DECODE) return bytesIn;
+        return operation == CodecMetrics.Operation.ENCODE ? bytesOut : 0;
+    }
+
+    /**
+     * @return Original bytes per encoded byte, for example 2 when the data was halved,
+     * and 0 when nothing was coded
+     */
+    public double getCompressionRatio() {
+        return ratio(getOriginalBytes(), getEncodedBytes());
+    }
+
+    /**
+     * @return Original bytes coded per second of wall time
+     */
+    public double getSymbolsPerSecond() {
+        return perSecond(getOriginalBytes(), wallNanos);
+    }
+
+    /**
+     * @return The number of blocks whose code came from the code table cache
+     */
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return The number of blocks the code table cache had to build a code for
+     */
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * @return The bytes allocated by the calling thread during the call, -1 if unknown
+     */
+    public long getAllocatedBytes() {
+        return allocated;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder(operation.toString()).append(": ")
+                .append(wallNanos / 1000).append(" us");
+        for (CodecMetrics.Phase phase : PHASES) {
+            if (phaseNanos[phase.ordinal()] > 0) {
+                s.append(", ").append(phase).append(' ').append(phaseNanos[phase.ordinal()] / 1000).append(" us");
+            }
+        }
+        return s.append(", ").append(bytesIn).append(" bytes in, ").append(bytesOut).append(" bytes out").toString();
+    }
+
+    static double ratio(long original, long encoded) {
+        return encoded == 0 ? 0 : (double) original / encoded;
+    }
+
+    static double perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+                if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                    return counter;
+                }
+            }
+        } catch (LinkageError | SecurityException e) {
+            // No management support, so no estimate
+        }
+        return null;
+    }
+}
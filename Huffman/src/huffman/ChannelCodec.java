@@ -0,0 +1,257 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class encodes and decodes the container format between channels,
+ * such as FileChannels and SocketChannels, through direct buffers that it
+ * keeps from one call to the next. Input is read a whole block at a time,
+ * and every block's header goes out with its payload in one gathering
+ * write, so a file takes a few system calls per block instead of going
+ * through the copies and small writes of the stream classes. The output is
+ * the same as HuffmanCodec's, coded the way the given codec is set up,
+ * and every call is reported to the codec's CodecMetrics.
+ *
+ * Blocks the codec stores instead of coding are written from the direct
+ * buffer they were read into, or between two FileChannels copied from the
+ * input file by FileChannel.transferTo, which lets the kernel move the
+ * bytes without them coming back up to the JVM. When decoding, they are read into a direct
+ * buffer and written from there once their CRC32 has been checked, so
+ * they never pass through a Java array, and like every other block never
+ * reach the output if they are corrupt.
+ *
+ * The buffers make a ChannelCodec unsafe to share between threads; every
+ * thread should have its own, and they can all share one HuffmanCodec.
+ * Channels have to be in blocking mode.
+ */
+public class ChannelCodec {
+    // Size of the buffer that encoded data is read through
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final HuffmanCodec codec;
+
+    // Room for the container header and a block header, or the end marker and trailer
+    private final ByteBuffer header = ByteBuffer.allocateDirect(ContainerFormat.HEADER_SIZE + ContainerFormat.BLOCK_HEADER_SIZE);
+
+    private final CRC32 crc = new CRC32();
+
+    private ByteBuffer input;
+    private ByteBuffer output;
+    private byte[] block = new byte[0];
+
+    public ChannelCodec(HuffmanCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Encodes the file source into the file target, replacing anything it held
+     */
+    public void encode(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            encode(in, out);
+        }
+    }
+
+    /**
+     * Encodes everything left in in and writes it to out. Neither channel is closed.
+     */
+    public void encode(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        int blockSize = codec.getBlockSize();
+        // A buffer from a larger block size is kept, and only blockSize of it read into
+        if (input == null || input.capacity() < blockSize) input = ByteBuffer.allocateDirect(blockSize);
+        if (block.length < blockSize) block = new byte[blockSize];
+
+        // The container header goes out with the first block
+        header.clear();
+        header.putInt(ContainerFormat.MAGIC).put((byte) ContainerFormat.VERSION).put((byte) 0).putInt(blockSize);
+
+        // Stored blocks go from file to file without being written from input
+        FileChannel file = in instanceof FileChannel && out instanceof FileChannel ? (FileChannel) in : null;
+
+        CallMetrics call = codec.startCall(CodecMetrics.Operation.ENCODE);
+        long totalLength = 0;
+        int blockCount = 0;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            long blockStart = file == null ? 0 : file.position();
+            input.clear().limit(blockSize);
+            while (input.hasRemaining()) {
+                if (in.read(input) < 0) {
+                    endOfInput = true;
+                    break;
+                }
+            }
+            input.flip();
+            int length = input.remaining();
+            if (length == 0) break;
+            input.get(block, 0, length);
+
+            EncodedBlock encoded = codec.encodeBlock(block, 0, length, call);
+            header.put((byte) encoded.type).putInt(encoded.originalSize)
+                    .putInt(encoded.payloadSize).putInt(encoded.checksum).flip();
+            if (encoded.type == ContainerFormat.STORED && file != null) {
+                writeFully(out, header);
+                transferFully(file, blockStart, length, out);
+            } else if (encoded.type == ContainerFormat.STORED) {
+                // The bytes are still in input, and go out from there
+                writeFully(out, header, input.rewind());
+            } else {
+                ByteBuffer payload = output(encoded.payloadSize);
+                payload.put(encoded.payload, encoded.payloadOffset, encoded.payloadSize).flip();
+                writeFully(out, header, payload);
+            }
+            header.clear();
+
+            totalLength += length;
+            blockCount++;
+        }
+
+        header.put((byte) ContainerFormat.END).putLong(totalLength).putInt(blockCount).flip();
+        writeFully(out, header);
+        codec.endCall(call);
+    }
+
+    /**
+     * Decodes the file source into the file target, replacing anything it held
+     */
+    public void decode(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            decode(in, out);
+        }
+    }
+
+    /**
+     * Decodes one container from in and writes the bytes to out. Neither channel
+     * is closed, and in may have been read past the end of the container.
+     */
+    public void decode(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        if (input == null || input.capacity() < READ_BUFFER_SIZE) input = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        input.clear().flip();
+        CallMetrics call = codec.startCall(CodecMetrics.Operation.DECODE);
+        ChannelInput channelInput = new ChannelInput(in, input);
+        ContainerReader reader = new ContainerReader(channelInput, codec.getTableLibrary());
+        reader.setMetrics(call);
+        while (reader.nextBlock()) {
+            int size = reader.getOriginalSize();
+            if (reader.getBlockType() == ContainerFormat.STORED) {
+                ByteBuffer stored = output(size);
+                reader.endStoredBlock(channelInput.read(stored, size, crc));
+                writeFully(out, stored);
+                continue;
+            }
+            if (block.length < size) block = new byte[size];
+            reader.readBlock(block, 0);
+            ByteBuffer decoded = output(size);
+            decoded.put(block, 0, size).flip();
+            writeFully(out, decoded);
+        }
+        codec.endCall(call);
+    }
+
+    // The output buffer, emptied and at least size bytes big
+    private ByteBuffer output(int size) {
+        if (output == null || output.capacity() < size) {
+            output = ByteBuffer.allocateDirect(Math.max(size, output == null ? 0 : 2 * output.capacity()));
+        }
+        return output.clear();
+    }
+
+    // Writes every buffer, in one gathering write when the channel can take one
+    private static void writeFully(WritableByteChannel out, ByteBuffer... buffers) throws IOException {
+        if (out instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) out;
+            while (buffers[0].hasRemaining() || buffers[buffers.length - 1].hasRemaining()) gathering.write(buffers);
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) out.write(buffer);
+        }
+    }
+
+    // Copies length bytes of in, from position on, to the end of out
+    private static void transferFully(FileChannel in, long position, long length, WritableByteChannel out)
+            throws IOException {
+        while (length > 0) {
+            long sent = in.transferTo(position, length, out);
+            if (sent <= 0) throw new EOFException("The input file got shorter while it was encoded");
+            position += sent;
+            length -= sent;
+        }
+    }
+
+    // Reads a channel through a direct buffer, for ContainerReader. Reads of a
+    // buffer's worth or more go straight from the channel into the caller's array.
+    private static final class ChannelInput extends InputStream {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+
+        ChannelInput(ReadableByteChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) {
+                if (len >= buffer.capacity()) return channel.read(ByteBuffer.wrap(b, off, len));
+                if (!fill()) return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        /**
+         * Reads the next length bytes into target, which has to have room for them,
+         * the rest straight from the channel once the buffer is empty. Afterwards
+         * target holds just those bytes, ready to be written.
+         *
+         * @return Their CRC32
+         */
+        int read(ByteBuffer target, int length, CRC32 crc) throws IOException {
+            target.clear().limit(length);
+            if (buffer.hasRemaining()) {
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + Math.min(length, buffer.remaining()));
+                target.put(buffer);
+                buffer.limit(limit);
+            }
+            while (target.hasRemaining()) {
+                if (channel.read(target) < 0) throw new EOFException("The container ends in the middle of a block");
+            }
+            target.flip();
+            crc.reset();
+            crc.update(target);
+            target.rewind();
+            return (int) crc.getValue();
+        }
+
+        private boolean fill() throws IOException {
+            buffer.clear();
+            int read = channel.read(buffer);
+            buffer.flip();
+            return read > 0;
+        }
+    }
+}
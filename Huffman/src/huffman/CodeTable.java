@@ -0,0 +1,185 @@
+package huffman;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class holds a canonical huffman code: every symbol's code is fully
+ * determined by the code lengths, so only the lengths need to be stored.
+ * Codes are handed out in order of length, and symbols with the same
+ * length get consecutive codes in order of their byte value.
+ */
+public class CodeTable {
+    // Longest code that fits in the long used to hold each code
+    public static final int MAX_LENGTH = 64;
+
+    private final int[] lengths;
+    private final long[] codes;
+
+    private CodeTable(int[] lengths) {
+        this.lengths = lengths;
+        this.codes = new long[lengths.length];
+
+        // Symbols sorted by code length, and by value for equal lengths
+        Integer[] order = new Integer[lengths.length];
+        for (int s = 0; s < order.length; s++) order[s] = s;
+        Arrays.sort(order, (a, b) -> lengths[a] != lengths[b] ? lengths[a] - lengths[b] : a - b);
+
+        long code = 0;
+        int previousLength = 0;
+        for (int s : order) {
+            if (lengths[s] == 0) continue;
+            if (previousLength != 0) code++;
+            code <<= lengths[s] - previousLength;
+            codes[s] = code;
+            previousLength = lengths[s];
+        }
+    }
+
+    /**
+     * Makes the canonical code with the given code lengths
+     *
+     * @param lengths The code length of every symbol, 0 for symbols that don't occur
+     */
+    public static CodeTable fromLengths(int[] lengths) {
+        if (lengths.length > Histogram.SYMBOLS) {
+            throw new IllegalArgumentException("At most " + Histogram.SYMBOLS + " symbols are supported");
+        }
+        int[] copy = Arrays.copyOf(lengths, Histogram.SYMBOLS);
+        for (int length : copy) {
+            if (length < 0 || length > MAX_LENGTH) {
+                throw new IllegalArgumentException("Code lengths must be between 0 and " + MAX_LENGTH);
+            }
+        }
+        return new CodeTable(copy);
+    }
+
+    /**
+     * @return The code of every symbol in the lowest bits, 0 for symbols not in the code
+     */
+    public long[] getCodes() {
+        return codes.clone();
+    }
+
+    /**
+     * @return The code length of every symbol, 0 for symbols not in the code
+     */
+    public int[] getLengths() {
+        return lengths.clone();
+    }
+
+    /**
+     * @return The code of every symbol as a string of 1's and 0's, null for symbols not in the code
+     */
+    public String[] toEncodings() {
+        String[] encodings = new String[lengths.length];
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] == 0) continue;
+            StringBuilder sb = new StringBuilder();
+            for (int i = lengths[s] - 1; i >= 0; i--) {
+                sb.append((codes[s] >>> i & 1) == 0 ? '0' : '1');
+            }
+            encodings[s] = sb.toString();
+        }
+        return encodings;
+    }
+
+    /**
+     * @return The number of bytes write takes
+     */
+    public int headerSize() {
+        int first = -1, last = -1, maxLength = 0;
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] == 0) continue;
+            if (first == -1) first = s;
+            last = s;
+            maxLength = Math.max(maxLength, lengths[s]);
+        }
+        if (first == -1) return 3;
+        int bitsPerLength = 32 - Integer.numberOfLeadingZeros(maxLength);
+        return 3 + ((last - first + 1) * bitsPerLength + 7) / 8;
+    }
+
+    /**
+     * Writes the code lengths as a compact header: the first and last symbol in
+     * the code, the number of bits used per length, and then the length of every
+     * symbol from first to last packed into that many bits each. A code with no
+     * symbols, such as the one for an empty file, is three zero bytes.
+     */
+    public void write(DataOutput out) throws IOException {
+        int first = -1, last = -1, maxLength = 0;
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] == 0) continue;
+            if (first == -1) first = s;
+            last = s;
+            maxLength = Math.max(maxLength, lengths[s]);
+        }
+        if (first == -1) {
+            out.writeByte(0);
+            out.writeByte(0);
+            out.writeByte(0);
+            return;
+        }
+
+        int bitsPerLength = 32 - Integer.numberOfLeadingZeros(maxLength);
+        out.writeByte(first);
+        out.writeByte(last);
+        out.writeByte(bitsPerLength);
+
+        // Pack the lengths most significant bit first, padding the last byte with zeroes
+        int packed = 0, packedBits = 0;
+        for (int s = first; s <= last; s++) {
+            packed = (packed << bitsPerLength) | lengths[s];
+            packedBits += bitsPerLength;
+            while (packedBits >= 8) {
+                packedBits -= 8;
+                out.writeByte(packed >>> packedBits);
+            }
+        }
+        if (packedBits > 0) out.writeByte(packed << (8 - packedBits));
+    }
+
+    /**
+     * Reads a header written by write and rebuilds the code from it
+     */
+    public static CodeTable read(DataInput in) throws IOException {
+        int first = in.readUnsignedByte();
+        int last = in.readUnsignedByte();
+        int bitsPerLength = in.readUnsignedByte();
+        if (bitsPerLength == 0 && first == 0 && last == 0) return new CodeTable(new int[Histogram.SYMBOLS]);
+        if (first > last || bitsPerLength < 1 || bitsPerLength > 7) {
+            throw new IOException("Corrupt code table header");
+        }
+
+        int[] lengths = new int[Histogram.SYMBOLS];
+        int packed = 0, packedBits = 0;
+        for (int s = first; s <= last; s++) {
+            while (packedBits < bitsPerLength) {
+                packed = (packed << 8) | in.readUnsignedByte();
+                packedBits += 8;
+            }
+            packedBits -= bitsPerLength;
+            lengths[s] = (packed >>> packedBits) & ((1 << bitsPerLength) - 1);
+            if (lengths[s] > MAX_LENGTH) throw new IOException("Corrupt code table header");
+        }
+        if (!fitsPrefixCode(lengths)) throw new IOException("Corrupt code table header");
+        return new CodeTable(lengths);
+    }
+
+    // Checks the Kraft inequality, that the sum of 2^-length over the symbols is at most 1,
+    // without which some codes would be the start of others. Codes that leave some bit
+    // patterns unused, like the one of a single symbol, are fine.
+    private static boolean fitsPrefixCode(int[] lengths) {
+        int[] counts = new int[MAX_LENGTH + 1];
+        for (int length : lengths) counts[length]++;
+        // The codes of each length still free, which once more than there are symbols can't run out
+        long free = 1;
+        for (int length = 1; length <= MAX_LENGTH && free <= lengths.length; length++) {
+            free = 2 * free - counts[length];
+            if (free < 0) return false;
+        }
+        return true;
+    }
+}
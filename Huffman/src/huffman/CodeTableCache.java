@@ -0,0 +1,214 @@
+package huffman;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class remembers the codes built for recent histograms, so that
+ * data with nearly the same statistics as earlier data can reuse its code
+ * instead of building a tree again.
+ *
+ * Histograms are looked up by a fingerprint: every byte value's ideal code
+ * length, log2(total / count), rounded and capped at 10 bits, so that rare
+ * and missing bytes look the same. When the fingerprint isn't cached, the
+ * code handed out last is tried instead. Before a code is reused its cost
+ * on the new counts is checked: it may be at most (1 + tolerance) times the
+ * entropy of the new counts plus the redundancy the code has on the counts
+ * it was built from. A code missing a byte of the new counts never passes.
+ *
+ * On a miss, the new counts are added to the counts of the code that was
+ * tried, and the code built from the sum is cached if it passes. Codes for
+ * repetitive traffic soon cover every byte it uses, and then nearly every
+ * lookup is a hit.
+ *
+ * The cache holds at most capacity codes, and evicts the least recently
+ * used one when full. It can be shared between threads.
+ */
+public class CodeTableCache {
+    // Largest rounded ideal code length kept in a fingerprint, rarer bytes are all alike
+    private static final int MAX_BUCKET = 10;
+
+    // Counts kept for a cached code are halved once they add up to more than this
+    private static final long MAX_TOTAL = 1L << 32;
+
+    private final int capacity;
+    private final double tolerance;
+    private final LinkedHashMap<Fingerprint, Entry> entries;
+
+    // The last code handed out, tried when the fingerprint isn't in the cache
+    private Entry mostRecent;
+
+    private long hits;
+    private long misses;
+
+    // A cached code, the counts it was built from, and the redundancy in bits per
+    // symbol it has on them
+    private static class Entry {
+        final CodeTable table;
+        final int[] lengths;
+        final long[] counts;
+        final double redundancy;
+
+        Entry(long[] counts) {
+            long total = Histogram.total(counts);
+            this.counts = counts;
+            this.lengths = TreeBuilder.fromCounts(counts).codeLengths(Histogram.SYMBOLS);
+            this.table = CodeTable.fromLengths(lengths);
+            this.redundancy = (cost(lengths, counts) - Histogram.entropyBits(counts, total)) / total;
+        }
+
+        // True if the code costs at most (1 + tolerance) times the bound on counts
+        boolean fits(long[] counts, long total, double entropy, double tolerance) {
+            return cost(lengths, counts) <= (1 + tolerance) * (entropy + redundancy * total);
+        }
+    }
+
+    /**
+     * @param capacity The most codes kept at once
+     * @param tolerance How much more than the bound a cached code may cost, as a
+     * fraction, for example 0.01 for 1%
+     */
+    public CodeTableCache(int capacity, double tolerance) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        if (!(tolerance >= 0)) throw new IllegalArgumentException("tolerance must be at least 0");
+        this.capacity = capacity;
+        this.tolerance = tolerance;
+        // Access order makes the eldest entry the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, CodeTableCache.Entry> eldest) {
+                return size() > CodeTableCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Finds a code for the given counts, reusing a cached one when it is good
+     * enough, and building and caching a new one otherwise
+     *
+     * @param counts The count of every byte value, at least one of them above 0
+     */
+    public CodeTable lookup(long[] counts) {
+        return lookup(counts, null);
+    }
+
+    /**
+     * Like lookup(counts), and also counts the hit or miss in call
+     *
+     * @param call The call being measured, or null
+     */
+    CodeTable lookup(long[] counts, CallMetrics call) {
+        long total = Histogram.total(counts);
+        if (total == 0) throw new IllegalArgumentException("The counts are all 0");
+        Fingerprint key = new Fingerprint(counts, total);
+        double entropy = Histogram.entropyBits(counts, total);
+
+        Entry entry;
+        Entry recent;
+        synchronized (this) {
+            entry = entries.get(key);
+            recent = mostRecent;
+        }
+        if (entry == null || !entry.fits(counts, total, entropy, tolerance)) {
+            entry = recent;
+        }
+        if (entry != null && entry.fits(counts, total, entropy, tolerance)) {
+            synchronized (this) {
+                hits++;
+                mostRecent = entry;
+                entries.put(key, entry);
+            }
+            if (call != null) call.cacheHit();
+            return entry.table;
+        }
+
+        // Build outside the lock, so other threads can keep hitting the cache. The
+        // closest code so far usually failed only for a byte it has no code for, so
+        // its counts are added in first, which lets codes cover more and more of the
+        // bytes the traffic uses.
+        Entry built = null;
+        if (entry != null) {
+            long[] merged = Arrays.copyOf(counts, Histogram.SYMBOLS);
+            for (int s = 0; s < merged.length; s++) merged[s] += entry.counts[s];
+            // Halve old counts now and then, so the code follows slow changes in the traffic
+            if (Histogram.total(merged) > MAX_TOTAL) {
+                for (int s = 0; s < merged.length; s++) merged[s] = (merged[s] + 1) / 2;
+            }
+            built = new Entry(merged);
+            if (!built.fits(counts, total, entropy, tolerance)) built = null;
+        }
+        if (built == null) built = new Entry(Arrays.copyOf(counts, Histogram.SYMBOLS));
+
+        synchronized (this) {
+            misses++;
+            mostRecent = built;
+            entries.put(key, built);
+        }
+        if (call != null) call.cacheMiss();
+        return built.table;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of codes in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        mostRecent = null;
+        hits = 0;
+        misses = 0;
+    }
+
+    // Total encoded bits of the counts with the given code lengths, infinite if a byte has no code
+    private static double cost(int[] lengths, long[] counts) {
+        double bits = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] == 0) continue;
+            if (lengths[s] == 0) return Double.POSITIVE_INFINITY;
+            bits += (double) counts[s] * lengths[s];
+        }
+        return bits;
+    }
+
+    // Every byte value's rounded ideal code length, 4 bits each, 16 to a long
+    private static final class Fingerprint {
+        private final long[] buckets = new long[Histogram.SYMBOLS / 16];
+        private final int hash;
+
+        Fingerprint(long[] counts, long total) {
+            for (int s = 0; s < counts.length; s++) {
+                // log2(total / count) rounded, by taking the floor of log2 of sqrt(2) times it.
+                // Rare bytes and missing bytes land in the same bucket.
+                long bucket = MAX_BUCKET;
+                if (counts[s] > 0) {
+                    long ratio = (total * 181 >>> 7) / counts[s];
+                    bucket = Math.min(MAX_BUCKET, 63 - Long.numberOfLeadingZeros(Math.max(1, ratio)));
+                }
+                buckets[s >>> 4] |= bucket << ((s & 15) * 4);
+            }
+            hash = Arrays.hashCode(buckets);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint && Arrays.equals(buckets, ((Fingerprint) o).buckets);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package huffman;
+
+/**
+ * This interface receives the measurements of every encode and decode call
+ * made through a HuffmanCodec, a ChannelCodec or a HuffmanCoding: the wall
+ * time of each phase, bytes in and out, code table cache hits and misses,
+ * and the bytes the calling thread allocated. Each call hands in one
+ * CallMetrics once it is done; calls that throw aren't recorded.
+ *
+ * NONE, the default, records nothing, and since isEnabled is false the
+ * codecs don't even read the clock. Timing is taken per block and per
+ * phase, never per byte, so the coding loops are the same either way.
+ * MetricsRecorder adds calls up into snapshots, and JfrMetrics turns them
+ * into Flight Recorder events.
+ */
+public interface CodecMetrics {
+    /**
+     * The parts of the work that are timed separately
+     */
+    enum Phase {
+        // Counting the bytes
+        HISTOGRAM,
+        // Building a tree or code lengths from the counts, or finding a cached code;
+        // when decoding, reading a block's table and building its lookup table
+        TREE_BUILD,
+        // Handing out codes for the lengths
+        CODE_ASSIGNMENT,
+        // Writing the codes of the bytes, with the checksum
+        ENCODE,
+        // Turning codes back into bytes, with the checksum
+        DECODE
+    }
+
+    /**
+     * The kinds of call that are recorded
+     */
+    enum Operation {
+        ENCODE,
+        DECODE,
+        // One step of building a code, such as HuffmanCoding.makeTree()
+        BUILD_CODE
+    }
+
+    /**
+     * Records nothing
+     */
+    CodecMetrics NONE = new CodecMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void record(CallMetrics call) { }
+    };
+
+    /**
+     * @return False if calls shouldn't be measured at all, in which case record is never called
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Called on the calling thread at the end of every call. Implementations shared
+     * by codecs used on many threads have to be thread safe.
+     */
+    void record(CallMetrics call);
+}
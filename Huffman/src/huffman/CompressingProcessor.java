@@ -0,0 +1,87 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class compresses a stream of ByteBuffer chunks as they arrive, and
+ * publishes the container one block at a time: the first chunk also holds
+ * the container header, and the last one the trailer. Blocks are coded the
+ * way the given codec is set up, so the output is what HuffmanCodec.encode
+ * makes of the same bytes.
+ *
+ * A chunk is only asked for once the subscriber wants more output and the
+ * chunk before has been used up, so at most one block and one input chunk
+ * are held at a time. Chunks from upstream are read as they are needed,
+ * after onNext has returned, so they must not be changed once they have
+ * been passed on. Every published chunk is a new buffer that belongs to
+ * the subscriber.
+ */
+public class CompressingProcessor extends BlockProcessor {
+    private final HuffmanCodec codec;
+
+    private ByteArrayOutputStream sink;
+    private ContainerWriter writer;
+    private byte[] block;
+    private int filled;
+    private boolean finished;
+
+    /**
+     * @param codec The codec to code blocks with, which shouldn't be set up
+     * differently while the stream goes on
+     */
+    public CompressingProcessor(HuffmanCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    ByteBuffer next(ByteBuffer input, boolean ended) throws IOException {
+        if (writer == null) {
+            block = new byte[codec.getBlockSize()];
+            sink = new ByteArrayOutputStream();
+            writer = new ContainerWriter(sink, block.length);
+        }
+
+        if (input != null) {
+            int length = Math.min(input.remaining(), block.length - filled);
+            input.get(block, filled, length);
+            filled += length;
+            if (filled < block.length) return null;
+            codec.writeBlock(writer, block, 0, filled);
+            filled = 0;
+            return take();
+        }
+        if (!ended) return null;
+
+        // The last block goes out together with the trailer
+        if (filled > 0) codec.writeBlock(writer, block, 0, filled);
+        filled = 0;
+        writer.finish();
+        finished = true;
+        return take();
+    }
+
+    @Override
+    boolean isFinished() {
+        return finished && sink == null;
+    }
+
+    @Override
+    void release() {
+        sink = null;
+        writer = null;
+        block = null;
+    }
+
+    // Hands over what has been written since the last chunk
+    private ByteBuffer take() {
+        ByteBuffer chunk = ByteBuffer.wrap(sink.toByteArray());
+        if (finished) {
+            release();
+        } else {
+            sink.reset();
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,73 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class sends requests to a CompressionServer over one connection.
+ * Requests are sent one at a time, so threads sharing a client wait for
+ * each other; threads that want requests in flight together should each
+ * have their own client.
+ */
+public class CompressionClient implements Closeable {
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(CompressionServer.FRAME_HEADER_SIZE);
+
+    /**
+     * @param address The server's address, see CompressionServer.address
+     */
+    public CompressionClient(SocketAddress address) throws IOException {
+        this.channel = SocketChannel.open(address);
+    }
+
+    public byte[] compress(byte[] data) throws IOException {
+        return compress(data, 0, data.length);
+    }
+
+    /**
+     * @return data[offset, offset + length) in HuffmanCodec's container format
+     * @throws IOException If the server failed the request, with its message
+     */
+    public byte[] compress(byte[] data, int offset, int length) throws IOException {
+        return call(CompressionServer.COMPRESS, data, offset, length);
+    }
+
+    public byte[] decompress(byte[] data) throws IOException {
+        return decompress(data, 0, data.length);
+    }
+
+    /**
+     * @return The bytes encoded in data[offset, offset + length)
+     * @throws IOException If the server failed the request, with its message
+     */
+    public byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        return call(CompressionServer.DECOMPRESS, data, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private synchronized byte[] call(byte operation, byte[] data, int offset, int length) throws IOException {
+        HuffmanEncoder.checkRange(data.length, offset, length);
+        CompressionServer.writeFrame(channel, header, operation, data, offset, length);
+
+        header.clear();
+        if (!CompressionServer.readFully(channel, header)) throw new EOFException("The server closed the connection");
+        byte status = header.get(0);
+        int size = header.getInt(1);
+        if (size < 0) throw new IOException("Bad answer from the server");
+        byte[] body = new byte[size];
+        if (!CompressionServer.readFully(channel, ByteBuffer.wrap(body)) && size > 0) {
+            throw new EOFException("The server closed the connection");
+        }
+        if (status != CompressionServer.OK) throw new IOException(new String(body, StandardCharsets.UTF_8));
+        return body;
+    }
+}
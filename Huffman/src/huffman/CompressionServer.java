@@ -0,0 +1,366 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a long running compression service, so that programs which
+ * only compress a few small files don't each pay for starting a JVM and
+ * warming it up. It listens on a Unix domain socket, or on a TCP port of the
+ * loopback address, and serves every connection on its own virtual thread
+ * (a platform thread before Java 21). All connections share one HuffmanCodec,
+ * so a code table cache set on it is warmed up by every request, and the
+ * buffers a connection used are kept for later connections.
+ *
+ * A connection carries any number of requests, one after the other. A request
+ * is an operation byte, COMPRESS or DECOMPRESS, the payload size as a 4 byte
+ * big endian int, and the payload. Compressed data is HuffmanCodec's container
+ * format. Each request is answered with a status byte, OK or ERROR, a size,
+ * and the result or a UTF-8 error message. CompressionClient speaks this protocol.
+ */
+public class CompressionServer implements Closeable {
+    public static final byte COMPRESS = 'C';
+    public static final byte DECOMPRESS = 'D';
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+
+    // Operation or status byte, then the size
+    static final int FRAME_HEADER_SIZE = 5;
+
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 64 << 20;
+
+    // How many connections' buffers are kept, and the largest array worth keeping
+    private static final int POOL_SIZE = 64;
+    private static final int MAX_POOLED_ARRAY = 4 << 20;
+
+    // Failed accepts in a row before the server stops accepting, and the longest wait between them
+    private static final int MAX_ACCEPT_FAILURES = 20;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final HuffmanCodec codec;
+    private final int maxMessageSize;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final Set<SocketChannel> openChannels = ConcurrentHashMap.newKeySet();
+    private final ArrayBlockingQueue<Scratch> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final Thread acceptor = new Thread(this::acceptLoop, "huffman-server");
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean closed;
+
+    // A connection's buffers, reused from one request to the next
+    private static final class Scratch {
+        final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        byte[] input = new byte[0];
+        byte[] output = new byte[0];
+
+        byte[] input(int size) {
+            if (input.length < size) input = new byte[size];
+            return input;
+        }
+
+        byte[] output(int size) {
+            if (output.length < size) output = new byte[size];
+            return output;
+        }
+    }
+
+    public CompressionServer(SocketAddress address, HuffmanCodec codec) throws IOException {
+        this(address, codec, DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * Binds the server to address. Nothing is accepted until start is called.
+     *
+     * @param address A UnixDomainSocketAddress, or an InetSocketAddress, port 0 for any free port
+     * @param codec The codec every request goes through
+     * @param maxMessageSize The largest payload accepted or returned, in bytes
+     */
+    public CompressionServer(SocketAddress address, HuffmanCodec codec, int maxMessageSize) throws IOException {
+        if (maxMessageSize < 1) throw new IllegalArgumentException("maxMessageSize must be at least 1");
+        this.codec = codec;
+        this.maxMessageSize = maxMessageSize;
+        this.server = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        try {
+            server.bind(address);
+            this.address = server.getLocalAddress();
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * Starts accepting connections on a background thread. If accepting keeps
+     * failing, with a longer wait after each failure, the server stops accepting
+     * and closes its socket, while the open connections are still served.
+     *
+     * @return This server
+     */
+    public CompressionServer start() {
+        acceptor.start();
+        return this;
+    }
+
+    /**
+     * @return The address the server is bound to, with the actual port for TCP
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return The number of requests answered so far, including failed ones
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones, and removes the socket
+     * file of a Unix domain socket
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            server.close();
+            for (SocketChannel channel : openChannels) channel.close();
+            connections.shutdown();
+        } finally {
+            if (address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+    }
+
+    /**
+     * @return A Unix domain socket address for a path, or a loopback TCP address
+     * for a port number
+     */
+    public static SocketAddress address(String pathOrPort) {
+        if (!pathOrPort.isEmpty() && pathOrPort.chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(pathOrPort));
+        }
+        return UnixDomainSocketAddress.of(pathOrPort);
+    }
+
+    /**
+     * Runs a server until the process is stopped, with a code table cache
+     * shared by every request
+     *
+     * @param args The socket path, or a TCP port on the loopback address
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 1) {
+            System.err.println("Usage: java huffman.CompressionServer <socket path | port>");
+            System.exit(2);
+        }
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setCodeTableCache(new CodeTableCache(256, 0.01));
+        CompressionServer server = new CompressionServer(address(args[0]), codec).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }));
+        System.err.println("Listening on " + server.getAddress());
+        server.acceptor.join();
+    }
+
+    private void acceptLoop() {
+        int failures = 0;
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                // Closed by close, or from another thread
+                return;
+            } catch (IOException e) {
+                if (closed) return;
+                // Errors such as running out of file descriptors tend to last, so wait
+                // longer after each one, and give up on the server if they don't stop
+                if (++failures == MAX_ACCEPT_FAILURES) {
+                    System.err.println("Accepting a connection failed " + failures + " times, "
+                            + "no longer accepting: " + e.getMessage());
+                    closeServer();
+                    return;
+                }
+                System.err.println("Accepting a connection failed: " + e.getMessage());
+                if (!sleep(Math.min(MAX_ACCEPT_BACKOFF_MILLIS, 10L << failures))) return;
+                continue;
+            }
+            failures = 0;
+            try {
+                connections.execute(() -> serve(channel));
+            } catch (RejectedExecutionException e) {
+                // close shut the executor down after this connection was accepted
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // The connection is dropped either way
+                }
+                return;
+            }
+        }
+    }
+
+    // Closes the listening socket, so new connections are refused, and leaves open ones be
+    private void closeServer() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    // Returns false if the thread was interrupted
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        openChannels.add(channel);
+        Scratch scratch = pool.poll();
+        if (scratch == null) scratch = new Scratch();
+        try (channel) {
+            // close may have run before the channel was added
+            while (!closed && serveRequest(channel, scratch)) { }
+        } catch (IOException e) {
+            // The client went away, or the server is closing
+        } finally {
+            openChannels.remove(channel);
+            if (scratch.input.length > MAX_POOLED_ARRAY) scratch.input = new byte[0];
+            if (scratch.output.length > MAX_POOLED_ARRAY) scratch.output = new byte[0];
+            pool.offer(scratch);
+        }
+    }
+
+    // Reads one request and answers it, returns false once the connection should be closed
+    private boolean serveRequest(SocketChannel channel, Scratch scratch) throws IOException {
+        ByteBuffer header = scratch.header.clear();
+        if (!readFully(channel, header)) return false;
+        byte operation = header.get(0);
+        int size = header.getInt(1);
+        if (operation != COMPRESS && operation != DECOMPRESS) {
+            reply(channel, scratch, ERROR, "Unknown operation " + operation);
+            return false;
+        }
+        if (size < 0 || size > maxMessageSize) {
+            // The payload isn't read, so the connection can't go on
+            reply(channel, scratch, ERROR, "A request of " + size + " bytes is over the limit of " + maxMessageSize);
+            return false;
+        }
+        byte[] input = scratch.input(size);
+        if (!readFully(channel, ByteBuffer.wrap(input, 0, size)) && size > 0) {
+            throw new EOFException("Connection closed in the middle of a request");
+        }
+
+        // Bad data only fails its own request
+        int resultSize = 0;
+        String error = null;
+        try {
+            if (operation == COMPRESS) {
+                byte[] output = scratch.output((int) Math.min(codec.maxEncodedLength(size), Integer.MAX_VALUE - 8));
+                resultSize = codec.encode(input, 0, size, output, 0);
+            } else {
+                long decodedLength = HuffmanCodec.decodedLength(input, 0, size);
+                if (decodedLength > maxMessageSize) {
+                    throw new IOException("The decompressed data of " + decodedLength
+                            + " bytes is over the limit of " + maxMessageSize);
+                }
+                resultSize = codec.decode(input, 0, size, scratch.output((int) decodedLength), 0);
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        requests.incrementAndGet();
+        if (error != null) {
+            reply(channel, scratch, ERROR, error);
+        } else {
+            reply(channel, scratch, OK, scratch.output, resultSize);
+        }
+        return true;
+    }
+
+    private static void reply(SocketChannel channel, Scratch scratch, byte status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        reply(channel, scratch, status, bytes, bytes.length);
+    }
+
+    // Sends the header and the body in one gathering write
+    private static void reply(SocketChannel channel, Scratch scratch, byte status, byte[] body, int size)
+            throws IOException {
+        writeFrame(channel, scratch.header, status, body, 0, size);
+    }
+
+    static void writeFrame(SocketChannel channel, ByteBuffer header, byte type, byte[] body, int offset, int size)
+            throws IOException {
+        header.clear();
+        header.put(type).putInt(size).flip();
+        ByteBuffer[] frame = { header, ByteBuffer.wrap(body, offset, size) };
+        while (frame[0].hasRemaining() || frame[1].hasRemaining()) channel.write(frame);
+    }
+
+    /**
+     * Fills the rest of buffer from channel
+     *
+     * @return False if the channel ended before the first byte
+     * @throws EOFException If the channel ended after some of the bytes
+     */
+    static boolean readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == start) return false;
+                throw new EOFException("Connection closed in the middle of a message");
+            }
+        }
+        return true;
+    }
+
+    // A virtual thread per connection where the JDK has them, which is Java 21 and later
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "huffman-connection");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
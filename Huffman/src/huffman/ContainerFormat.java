@@ -0,0 +1,65 @@
+package huffman;
+
+/**
+ * This class describes the container format written by ContainerWriter
+ * and read by ContainerReader. All numbers are big endian.
+ *
+ * <pre>
+ * file    = header block* end trailer [index footer]
+ * header  = magic "HUFC" (4 bytes), version (1 byte), flags (1 byte),
+ *           block size (4 bytes, the most original bytes in one block)
+ * block   = type (1 byte), original size (4 bytes), payload size (4 bytes),
+ *           CRC32 of the original bytes (4 bytes), payload
+ * end     = type END (1 byte)
+ * trailer = total original size (8 bytes), block count (4 bytes)
+ * index   = block count (4 bytes), then for every block its offset in the
+ *           file (8 bytes) and original size (4 bytes)
+ * footer  = offset of the index (8 bytes), magic "HUFX" (4 bytes)
+ * </pre>
+ *
+ * A HUFFMAN block's payload is a CodeTable header followed by the codes of
+ * the original bytes, most significant bit first, with the last byte padded
+ * with zeroes. Every block carries its own table, so each one can be decoded
+ * without the blocks before it, and the payload size lets a reader skip a
+ * block without looking inside it.
+ * <p>
+ * A TRAINED block is coded with a TrainedTable instead, and its payload is
+ * the table's ID (4 bytes) followed by the codes. The reader has to have
+ * the table in its TableLibrary.
+ * <p>
+ * A STORED block's payload is the original bytes as they are, so its
+ * payload size is its original size. Writers store blocks that coding
+ * wouldn't make enough smaller, such as compressed or random data.
+ * <p>
+ * The index and footer are only there when the INDEXED flag is set. A
+ * reader that can seek finds the index through the footer at the very end
+ * of the file, and can then decode any block, or all of them in parallel,
+ * without reading the blocks before it.
+ */
+public final class ContainerFormat {
+    public static final int MAGIC = 0x48554643; // "HUFC"
+    public static final int VERSION = 1;
+    public static final int INDEX_MAGIC = 0x48554658; // "HUFX"
+
+    // Header flags
+    public static final int INDEXED = 1;
+
+    // Block types
+    public static final int HUFFMAN = 1;
+    public static final int TRAINED = 2;
+    public static final int STORED = 3;
+    public static final int END = 0xFF;
+
+    // Bytes in the fixed part of a block header
+    public static final int BLOCK_HEADER_SIZE = 13;
+
+    // Bytes in the file header, the end marker and trailer, and the footer after the index
+    public static final int HEADER_SIZE = 10;
+    public static final int TRAILER_SIZE = 13;
+    public static final int FOOTER_SIZE = 12;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    // Don't instantiate
+    private ContainerFormat() { }
+}
@@ -0,0 +1,242 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * This class reads the container format described in ContainerFormat one
+ * block at a time. After nextBlock has read a block header, the block can
+ * either be decoded with readBlock or passed over with skipBlock, which
+ * skips the payload without reading it. TRAINED blocks are decoded with
+ * the tables of the reader's TableLibrary, and STORED blocks are read
+ * straight into the caller's array.
+ */
+public class ContainerReader implements Closeable {
+    private final DataInputStream in;
+    private final int blockSize;
+    private final boolean indexed;
+    private final CRC32 crc = new CRC32();
+    private final TableLibrary library;
+
+    // Header of the current block
+    private int blockType;
+    private int originalSize;
+    private int payloadSize;
+    private int checksum;
+    private boolean inBlock;
+
+    private long totalLength;
+    private int blockCount;
+    private byte[] payload = new byte[0];
+
+    // The call the blocks read are counted in, if any
+    private CallMetrics metrics;
+
+    /**
+     * Reads and checks the file header from in
+     */
+    public ContainerReader(InputStream in) throws IOException {
+        this(in, new TableLibrary());
+    }
+
+    /**
+     * Reads and checks the file header from in
+     *
+     * @param library The tables TRAINED blocks may refer to
+     */
+    public ContainerReader(InputStream in, TableLibrary library) throws IOException {
+        this.library = library;
+        this.in = new DataInputStream(in);
+        if (this.in.readInt() != ContainerFormat.MAGIC) throw new IOException("Not a huffman container");
+        int version = this.in.readUnsignedByte();
+        if (version != ContainerFormat.VERSION) throw new IOException("Unsupported container version " + version);
+        indexed = (this.in.readUnsignedByte() & ContainerFormat.INDEXED) != 0;
+        blockSize = this.in.readInt();
+        if (blockSize < 1) throw new IOException("Corrupt container header");
+    }
+
+    /**
+     * Counts the bytes of every block read from now on, and times their decoding, in call
+     */
+    void setMetrics(CallMetrics call) {
+        metrics = call;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return True if the container ends with an index of its blocks
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Moves on to the next block, skipping the current one if it wasn't read.
+     * At the end marker the trailer is read and checked against the blocks seen.
+     *
+     * @return True if there is another block, false at the end of the container
+     */
+    public boolean nextBlock() throws IOException {
+        if (inBlock) skipBlock();
+
+        blockType = in.readUnsignedByte();
+        if (blockType == ContainerFormat.END) {
+            if (in.readLong() != totalLength || in.readInt() != blockCount) {
+                throw new IOException("Container trailer doesn't match its blocks");
+            }
+            // Reading in order doesn't need the index
+            if (indexed) {
+                if (in.readInt() != blockCount) throw new IOException("Container index doesn't match its blocks");
+                in.skipNBytes(12L * blockCount);
+                in.readLong();
+                if (in.readInt() != ContainerFormat.INDEX_MAGIC) throw new IOException("Corrupt container footer");
+            }
+            return false;
+        }
+        if (!isBlockType(blockType)) throw new IOException("Unknown block type " + blockType);
+
+        originalSize = in.readInt();
+        payloadSize = in.readInt();
+        checksum = in.readInt();
+        if (originalSize < 1 || originalSize > blockSize || payloadSize < 0
+                || payloadSize > 8L * blockSize + 256
+                || (blockType == ContainerFormat.STORED && payloadSize != originalSize)) {
+            throw new IOException("Corrupt block header");
+        }
+
+        inBlock = true;
+        totalLength += originalSize;
+        blockCount++;
+        return true;
+    }
+
+    public int getBlockType() {
+        return blockType;
+    }
+
+    /**
+     * @return The number of original bytes in the current block
+     */
+    public int getOriginalSize() {
+        return originalSize;
+    }
+
+    /**
+     * @return The number of bytes the current block takes up after its header
+     */
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    /**
+     * Passes over the current block without reading its payload
+     */
+    public void skipBlock() throws IOException {
+        if (!inBlock) throw new IllegalStateException("No current block");
+        in.skipNBytes(payloadSize);
+        inBlock = false;
+    }
+
+    /**
+     * Decodes the current block into out, starting at offset, and checks its CRC32
+     *
+     * @return The number of bytes decoded, which is getOriginalSize()
+     */
+    public int readBlock(byte[] out, int offset) throws IOException {
+        if (!inBlock) throw new IllegalStateException("No current block");
+        inBlock = false;
+
+        if (blockType == ContainerFormat.STORED) {
+            long time = metrics == null ? 0 : System.nanoTime();
+            in.readFully(out, offset, originalSize);
+            checkChecksum(out, offset, originalSize, checksum, crc);
+            if (metrics != null) {
+                metrics.lap(CodecMetrics.Phase.DECODE, time);
+                metrics.addBytes(ContainerFormat.BLOCK_HEADER_SIZE + payloadSize, originalSize);
+            }
+            return originalSize;
+        }
+
+        if (payload.length < payloadSize) payload = new byte[payloadSize];
+        in.readFully(payload, 0, payloadSize);
+        decodePayload(blockType, library, payload, 0, payloadSize, out, offset, originalSize, checksum, crc, metrics);
+        if (metrics != null) metrics.addBytes(ContainerFormat.BLOCK_HEADER_SIZE + payloadSize, originalSize);
+        return originalSize;
+    }
+
+    /**
+     * Ends the current STORED block, whose payload the caller has read straight
+     * from the underlying stream, and checks the CRC32 the caller worked out
+     */
+    void endStoredBlock(int crcValue) throws IOException {
+        if (!inBlock || blockType != ContainerFormat.STORED) throw new IllegalStateException("No current stored block");
+        inBlock = false;
+        if (crcValue != checksum) throw new IOException("Block checksum doesn't match");
+        if (metrics != null) metrics.addBytes(ContainerFormat.BLOCK_HEADER_SIZE + payloadSize, originalSize);
+    }
+
+    /**
+     * @return True for the types a block can have, not counting END
+     */
+    static boolean isBlockType(int type) {
+        return type == ContainerFormat.HUFFMAN || type == ContainerFormat.TRAINED || type == ContainerFormat.STORED;
+    }
+
+    /**
+     * Decodes the payload of a block into out, and checks it against
+     * the CRC32 from the block header
+     *
+     * @param library The tables a TRAINED block may refer to
+     * @param crc A CRC32 to work out the checksum with
+     * @param call The call to time the table and the decoding in, or null
+     */
+    static void decodePayload(int type, TableLibrary library, byte[] payload, int payloadOffset, int payloadSize,
+                              byte[] out, int offset, int originalSize, int checksum, CRC32 crc,
+                              CallMetrics call) throws IOException {
+        long time = call == null ? 0 : System.nanoTime();
+        if (type == ContainerFormat.STORED) {
+            if (payloadSize != originalSize) throw new IOException("Corrupt block header");
+            System.arraycopy(payload, payloadOffset, out, offset, originalSize);
+            checkChecksum(out, offset, originalSize, checksum, crc);
+            if (call != null) call.lap(CodecMetrics.Phase.DECODE, time);
+            return;
+        }
+        ByteArrayInputStream payloadIn = new ByteArrayInputStream(payload, payloadOffset, payloadSize);
+        DataInputStream header = new DataInputStream(payloadIn);
+        int headerSize = payloadSize;
+        TableDecoder decoder;
+        if (type == ContainerFormat.TRAINED) {
+            decoder = library.require(header.readInt()).getDecoder();
+        } else {
+            CodeTable table = CodeTable.read(header);
+            decoder = new TableDecoder(table.getCodes(), table.getLengths());
+        }
+        // The bits are read straight from the payload array
+        headerSize -= payloadIn.available();
+        if (call != null) time = call.lap(CodecMetrics.Phase.TREE_BUILD, time);
+        BitReader bits = new BitReader(payload, payloadOffset + headerSize, payloadSize - headerSize);
+        int decoded = decoder.decode(bits, out, offset, originalSize);
+        if (decoded != originalSize) throw new IOException("Block payload is too short");
+
+        checkChecksum(out, offset, originalSize, checksum, crc);
+        if (call != null) call.lap(CodecMetrics.Phase.DECODE, time);
+    }
+
+    private static void checkChecksum(byte[] out, int offset, int length, int checksum, CRC32 crc) throws IOException {
+        crc.reset();
+        crc.update(out, offset, length);
+        if ((int) crc.getValue() != checksum) throw new IOException("Block checksum doesn't match");
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,159 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * This class writes the container format described in ContainerFormat.
+ * The file header is written when the writer is made, each call to
+ * writeBlock encodes and writes one block, and finish writes the trailer.
+ * Everything is written in one sequential pass; when an index is asked
+ * for, the offset of every block is remembered and written after the trailer.
+ */
+public class ContainerWriter implements Closeable {
+    private final DataOutputStream out;
+    private final int blockSize;
+
+    private final boolean indexed;
+
+    // Bytes written so far, and the offset and original size of every block for the index
+    private long position;
+    private long[] blockOffsets = new long[16];
+    private int[] blockSizes = new int[16];
+
+    private long totalLength;
+    private int blockCount;
+    private boolean finished;
+
+    /**
+     * Writes the file header to out
+     *
+     * @param out The stream to write the container to
+     * @param blockSize The most original bytes any block will hold
+     */
+    public ContainerWriter(OutputStream out, int blockSize) throws IOException {
+        this(out, blockSize, false);
+    }
+
+    /**
+     * Writes the file header to out
+     *
+     * @param out The stream to write the container to
+     * @param blockSize The most original bytes any block will hold
+     * @param indexed True to write an index of block offsets after the trailer
+     */
+    public ContainerWriter(OutputStream out, int blockSize, boolean indexed) throws IOException {
+        if (blockSize < 1) throw new IllegalArgumentException("blockSize must be at least 1");
+        this.out = new DataOutputStream(out);
+        this.blockSize = blockSize;
+        this.indexed = indexed;
+
+        this.out.writeInt(ContainerFormat.MAGIC);
+        this.out.writeByte(ContainerFormat.VERSION);
+        this.out.writeByte(indexed ? ContainerFormat.INDEXED : 0);
+        this.out.writeInt(blockSize);
+        position = ContainerFormat.HEADER_SIZE;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Encodes data[offset, offset + length) with the given code and writes it as one block
+     *
+     * @throws IllegalArgumentException If a byte of the block has no code in table
+     */
+    public void writeBlock(byte[] data, int offset, int length, CodeTable table) throws IOException {
+        checkLength(length);
+        writeBlock(EncodedBlock.encode(data, offset, length, table));
+    }
+
+    /**
+     * Encodes data[offset, offset + length) with a trained table and writes it as one
+     * block, which refers to the table by ID instead of holding it. The block is stored
+     * as it is instead when coding wouldn't make it at least 2% smaller.
+     */
+    public void writeBlock(byte[] data, int offset, int length, TrainedTable table) throws IOException {
+        checkLength(length);
+        writeBlock(EncodedBlock.encode(data, offset, length, table, EncodedBlock.DEFAULT_MIN_SAVING, null));
+    }
+
+    /**
+     * Encodes data[offset, offset + length) with a code built from its own counts,
+     * and writes it as one block. The block is stored as it is instead when coding
+     * wouldn't make it at least 2% smaller.
+     */
+    public void writeBlock(byte[] data, int offset, int length) throws IOException {
+        checkLength(length);
+        writeBlock(EncodedBlock.encode(data, offset, length));
+    }
+
+    /**
+     * Writes a block that has already been encoded
+     */
+    void writeBlock(EncodedBlock block) throws IOException {
+        checkLength(block.originalSize);
+        if (blockCount == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, 2 * blockCount);
+            blockSizes = Arrays.copyOf(blockSizes, 2 * blockCount);
+        }
+        blockOffsets[blockCount] = position;
+        blockSizes[blockCount] = block.originalSize;
+        position += ContainerFormat.BLOCK_HEADER_SIZE + block.payloadSize;
+
+        out.writeByte(block.type);
+        out.writeInt(block.originalSize);
+        out.writeInt(block.payloadSize);
+        out.writeInt(block.checksum);
+        out.write(block.payload, block.payloadOffset, block.payloadSize);
+
+        totalLength += block.originalSize;
+        blockCount++;
+    }
+
+    private void checkLength(int length) {
+        if (length < 1 || length > blockSize) {
+            throw new IllegalArgumentException("Block length must be between 1 and " + blockSize);
+        }
+    }
+
+    /**
+     * Writes the end marker and trailer, and the index if there is one.
+     * Nothing more can be written afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+        out.writeByte(ContainerFormat.END);
+        out.writeLong(totalLength);
+        out.writeInt(blockCount);
+        position += ContainerFormat.TRAILER_SIZE;
+
+        if (indexed) {
+            out.writeInt(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                out.writeLong(blockOffsets[i]);
+                out.writeInt(blockSizes[i]);
+            }
+            out.writeLong(position);
+            out.writeInt(ContainerFormat.INDEX_MAGIC);
+        }
+        out.flush();
+    }
+
+    /**
+     * Finishes the container and closes the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class decompresses a container arriving as ByteBuffer chunks, split
+ * anywhere, and publishes every block's bytes as one chunk as soon as the
+ * whole block is in. Once the end of the container has been read, upstream
+ * is cancelled and the stream completes; if upstream completes first, the
+ * stream fails with an EOFException.
+ *
+ * Input is only asked for when the subscriber wants more output and the
+ * bytes held don't make up a whole block, so at most one block, plus
+ * whatever the last chunk brought with it, is held at a time. Every
+ * published chunk is a new buffer that belongs to the subscriber.
+ */
+public class DecompressingProcessor extends BlockProcessor {
+    private final TableLibrary library;
+
+    private Window window = new Window();
+    private ContainerReader reader;
+    private int blocks;
+    private boolean finished;
+
+    /**
+     * @param codec The codec whose trained tables TRAINED blocks may refer to
+     */
+    public DecompressingProcessor(HuffmanCodec codec) {
+        this.library = codec.getTableLibrary();
+    }
+
+    @Override
+    ByteBuffer next(ByteBuffer input, boolean ended) throws IOException {
+        if (input != null) window.append(input);
+
+        if (reader == null) {
+            if (window.available() < ContainerFormat.HEADER_SIZE) return needMore(ended);
+            reader = new ContainerReader(window, library);
+        }
+        // Only let the reader at the next block or the trailer once all of it is here
+        long needed = window.nextSize();
+        if (needed > Integer.MAX_VALUE - 8) throw new IOException("Block is too large");
+        if (window.available() < needed) return needMore(ended);
+
+        if (!reader.nextBlock()) {
+            finished = true;
+            release();
+            return null;
+        }
+        blocks++;
+        byte[] out = new byte[reader.getOriginalSize()];
+        reader.readBlock(out, 0);
+        return ByteBuffer.wrap(out);
+    }
+
+    @Override
+    boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    void release() {
+        window = null;
+        reader = null;
+    }
+
+    private static ByteBuffer needMore(boolean ended) throws IOException {
+        if (ended) throw new EOFException("The data ended in the middle of the container");
+        return null;
+    }
+
+    // The bytes received but not read yet, which the ContainerReader reads from
+    private final class Window extends InputStream {
+        private byte[] buffer = new byte[1 << 13];
+        private int position;
+        private int limit;
+
+        void append(ByteBuffer chunk) {
+            int length = chunk.remaining();
+            if (length > buffer.length - limit) {
+                // Move what is left to the front, and grow if that isn't enough
+                int left = limit - position;
+                byte[] target = left + length > buffer.length
+                        ? new byte[Math.max(left + length, 2 * buffer.length)]
+                        : buffer;
+                System.arraycopy(buffer, position, target, 0, left);
+                buffer = target;
+                position = 0;
+                limit = left;
+            }
+            chunk.get(buffer, limit, length);
+            limit += length;
+        }
+
+        // How many bytes the next block, or the end marker and what follows it, take up
+        long nextSize() {
+            if (available() < 1) return 1;
+            int type = buffer[position] & 0xFF;
+            if (type == ContainerFormat.END) {
+                if (!reader.isIndexed()) return ContainerFormat.TRAILER_SIZE;
+                // The index starts with its block count, right after the trailer
+                int entries = ContainerFormat.TRAILER_SIZE + 4;
+                if (available() < entries) return entries;
+                // An index that doesn't match is turned down as soon as its count is read
+                int count = intAt(ContainerFormat.TRAILER_SIZE);
+                return count == blocks ? entries + 12L * count + ContainerFormat.FOOTER_SIZE : entries;
+            }
+            if (!ContainerReader.isBlockType(type)) return 1;
+            if (available() < ContainerFormat.BLOCK_HEADER_SIZE) return ContainerFormat.BLOCK_HEADER_SIZE;
+            // A corrupt payload size is turned down as soon as the block header is read
+            long payloadSize = intAt(5);
+            if (payloadSize < 0 || payloadSize > 8L * reader.getBlockSize() + 256) {
+                return ContainerFormat.BLOCK_HEADER_SIZE;
+            }
+            return ContainerFormat.BLOCK_HEADER_SIZE + payloadSize;
+        }
+
+        private int intAt(int offset) {
+            int i = position + offset;
+            return (buffer[i] & 0xFF) << 24 | (buffer[i + 1] & 0xFF) << 16 | (buffer[i + 2] & 0xFF) << 8 | buffer[i + 3] & 0xFF;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public int read() {
+            return position < limit ? buffer[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (position == limit) return -1;
+            len = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, len);
+            position += len;
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min(Math.max(n, 0), limit - position);
+            position += skipped;
+            return skipped;
+        }
+    }
+}
@@ -152,7 +152,7 @@ public class Driver {
         boolean first = true;
 
         // Print out all their encodings (which are not null)
-        for (int i = 0; i < 128; i++) {
+        for (int i = 0; i < encodings.length; i++) {
             if (encodings[i] != null) {
                 if (!first) StdOut.print(", ");
                 
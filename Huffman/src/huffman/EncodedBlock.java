@@ -0,0 +1,222 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.CRC32;
+
+/**
+ * This class holds one block of the container format after it has been
+ * encoded, ready to be written by ContainerWriter. Encoding a block needs
+ * nothing but the block itself, so blocks can be encoded on any thread.
+ *
+ * Blocks coded from their own counts are first checked against how small
+ * they can get: the entropy of the counts before any tree is built, and
+ * then the exact size with the code. A block that wouldn't shrink by at
+ * least minSaving of its size is stored instead, and a STORED block's
+ * payload is the caller's array itself, so it has to be written before
+ * the array is changed.
+ */
+final class EncodedBlock {
+    // The least share of its size coding has to save for a block not to be stored
+    static final double DEFAULT_MIN_SAVING = 0.02;
+
+    final int type;
+    final int originalSize;
+    final int checksum;
+    final byte[] payload;
+    final int payloadOffset;
+    final int payloadSize;
+
+    private EncodedBlock(int type, int originalSize, int checksum, byte[] payload, int payloadOffset, int payloadSize) {
+        this.type = type;
+        this.originalSize = originalSize;
+        this.checksum = checksum;
+        this.payload = payload;
+        this.payloadOffset = payloadOffset;
+        this.payloadSize = payloadSize;
+    }
+
+    /**
+     * Encodes data[offset, offset + length) with a code built from the block's own
+     * counts, or stores it if that doesn't save DEFAULT_MIN_SAVING
+     */
+    static EncodedBlock encode(byte[] data, int offset, int length) {
+        return encode(data, offset, length, (CodeTableCache) null);
+    }
+
+    /**
+     * Encodes data[offset, offset + length) with a code for the block's own counts,
+     * taken from cache when it has a good enough one, or stores it if that doesn't
+     * save DEFAULT_MIN_SAVING
+     *
+     * @param cache The cache of recent codes, or null to always build a new code
+     */
+    static EncodedBlock encode(byte[] data, int offset, int length, CodeTableCache cache) {
+        return encode(data, offset, length, cache, DEFAULT_MIN_SAVING, null);
+    }
+
+    /**
+     * Like encode(data, offset, length, cache), and also times each phase in call
+     *
+     * @param minSaving The least share of the block's size coding has to save, from 0 to 1
+     * @param call The call being measured, or null
+     */
+    static EncodedBlock encode(byte[] data, int offset, int length, CodeTableCache cache,
+                               double minSaving, CallMetrics call) {
+        long time = call == null ? 0 : System.nanoTime();
+        long[] counts = new long[Histogram.SYMBOLS];
+        Histogram.count(data, offset, offset + length, counts);
+        if (call != null) time = call.lap(CodecMetrics.Phase.HISTOGRAM, time);
+
+        // Incompressible data is caught here, without building a tree
+        long limit = maxPayload(length, minSaving);
+        if (!mayFit(counts, length, limit)) return stored(data, offset, length, call, time);
+
+        CodeTable table = null;
+        if (cache != null) {
+            // A cached code is only close to the best one, so make sure it still
+            // takes no more than 8 bits a byte, like any code built for the block
+            CodeTable cached = cache.lookup(counts, call);
+            int[] lengths = cached.getLengths();
+            long bits = 0;
+            for (int s = 0; s < counts.length; s++) bits += counts[s] * lengths[s];
+            if (bits <= 8L * length) table = cached;
+            if (call != null) time = call.lap(CodecMetrics.Phase.TREE_BUILD, time);
+        }
+        if (table == null) {
+            int[] lengths = TreeBuilder.fromCounts(counts).codeLengths(Histogram.SYMBOLS);
+            if (call != null) time = call.lap(CodecMetrics.Phase.TREE_BUILD, time);
+            table = CodeTable.fromLengths(lengths);
+            if (call != null) time = call.lap(CodecMetrics.Phase.CODE_ASSIGNMENT, time);
+        }
+        if (codedBytes(counts, table.getLengths()) > limit - table.headerSize()) {
+            return stored(data, offset, length, call, time);
+        }
+
+        EncodedBlock block = encode(data, offset, length, table);
+        if (call != null) call.lap(CodecMetrics.Phase.ENCODE, time);
+        return block;
+    }
+
+    /**
+     * Encodes data[offset, offset + length) with the given code
+     *
+     * @throws IllegalArgumentException If a byte of the block has no code in table
+     */
+    static EncodedBlock encode(byte[] data, int offset, int length, CodeTable table) {
+        return encode(ContainerFormat.HUFFMAN, data, offset, length, table, -1);
+    }
+
+    /**
+     * Encodes data[offset, offset + length) with a trained table, which the payload
+     * refers to by ID, or stores it if that doesn't save minSaving of its size, or the
+     * table has no code for one of its bytes
+     *
+     * @param call The call being measured, or null
+     */
+    static EncodedBlock encode(byte[] data, int offset, int length, TrainedTable table,
+                               double minSaving, CallMetrics call) {
+        long time = call == null ? 0 : System.nanoTime();
+        long[] counts = new long[Histogram.SYMBOLS];
+        Histogram.count(data, offset, offset + length, counts);
+        if (call != null) time = call.lap(CodecMetrics.Phase.HISTOGRAM, time);
+
+        // The payload starts with the table's ID
+        long bytes = codedBytes(counts, table.getCodeTable().getLengths());
+        if (bytes == Long.MAX_VALUE || 4 + bytes > maxPayload(length, minSaving)) {
+            return stored(data, offset, length, call, time);
+        }
+
+        EncodedBlock block = encode(ContainerFormat.TRAINED, data, offset, length, table.getCodeTable(), table.getId());
+        if (call != null) call.lap(CodecMetrics.Phase.ENCODE, time);
+        return block;
+    }
+
+    /**
+     * Keeps data[offset, offset + length) as it is, in a STORED block whose payload is data itself
+     */
+    static EncodedBlock stored(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return new EncodedBlock(ContainerFormat.STORED, length, (int) crc.getValue(), data, offset, length);
+    }
+
+    private static EncodedBlock stored(byte[] data, int offset, int length, CallMetrics call, long time) {
+        EncodedBlock block = stored(data, offset, length);
+        if (call != null) call.lap(CodecMetrics.Phase.ENCODE, time);
+        return block;
+    }
+
+    // The most payload bytes a coded block of length bytes may take, so it saves minSaving of them
+    private static long maxPayload(int length, double minSaving) {
+        return (long) ((1 - minSaving) * length);
+    }
+
+    // False if no code for the counts can take limit bytes or less. The entropy is at most
+    // log2 of the number of byte values, so it only has to be worked out when there are many.
+    private static boolean mayFit(long[] counts, int length, long limit) {
+        int used = 0;
+        for (long count : counts) {
+            if (count > 0) used++;
+        }
+        if (Math.log(used) / Math.log(2) * length / 8 <= limit) return true;
+        return Histogram.entropyBits(counts, length) / 8 <= limit;
+    }
+
+    // Bytes the codes of the counts take, Long.MAX_VALUE if a counted byte has no code
+    private static long codedBytes(long[] counts, int[] lengths) {
+        long bits = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] == 0) continue;
+            if (lengths[s] == 0) return Long.MAX_VALUE;
+            bits += counts[s] * lengths[s];
+        }
+        return (bits + 7) / 8;
+    }
+
+    // Writes the table itself for a HUFFMAN block, or only the ID for a TRAINED one
+    private static EncodedBlock encode(int type, byte[] data, int offset, int length, CodeTable table, int id) {
+        long[] codes = table.getCodes();
+        int[] lengths = table.getLengths();
+        Payload payload = new Payload(length / 2 + 64);
+
+        try {
+            DataOutputStream header = new DataOutputStream(payload);
+            if (type == ContainerFormat.TRAINED) {
+                header.writeInt(id);
+            } else {
+                table.write(header);
+            }
+            header.flush();
+
+            BitWriter bits = new BitWriter(payload, length + 8);
+            for (int i = offset; i < offset + length; i++) {
+                int b = data[i] & 0xFF;
+                if (lengths[b] == 0) throw new IllegalArgumentException("Byte " + b + " has no code");
+                bits.write(codes[b], lengths[b]);
+            }
+            bits.finish();
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new UncheckedIOException(e);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return new EncodedBlock(type, length, (int) crc.getValue(),
+                payload.array(), 0, payload.size());
+    }
+
+    // Lets the payload be handed on without copying it out of the stream
+    private static class Payload extends ByteArrayOutputStream {
+        Payload(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class is a huffman coding tree packed into a single int array, so
+ * walking it one bit at a time doesn't follow a chain of TreeNode, CharFreq
+ * and Character objects. The nodes are laid out breadth first with the
+ * root at index 0, which puts the two children of a node next to each
+ * other, and the short, common codes near the start of the array.
+ *
+ * A node's entry is the index of its left child, the right child being the
+ * one after it, or -1 - symbol for a leaf. Trees of incomplete codes have
+ * nodes with only one child, and the missing one is EMPTY. A tree of n
+ * leaves takes 8n - 4 bytes, where a TreeNode tree takes about 50 bytes a node.
+ */
+public final class FlatTree {
+    // The entry of a missing child
+    public static final int EMPTY = Integer.MIN_VALUE;
+
+    private final int[] nodes;
+
+    private FlatTree(int[] nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Lays out a tree made by TreeBuilder. A lone leaf becomes the left child of
+     * the root, since its code still takes one bit.
+     */
+    public static FlatTree of(TreeBuilder builder) {
+        if (builder.getLeafCount() == 0) return new FlatTree(new int[0]);
+        if (builder.getLeafCount() == 1) return new FlatTree(new int[] { 1, -1 - builder.getSymbol(0), EMPTY });
+
+        // order[i] is the builder node that goes to index i, in breadth first order
+        int[] order = new int[builder.getRoot() + 1];
+        int[] nodes = new int[order.length];
+        order[0] = builder.getRoot();
+        int next = 1;
+        for (int i = 0; i < order.length; i++) {
+            int node = order[i];
+            if (builder.isLeaf(node)) {
+                nodes[i] = -1 - builder.getSymbol(node);
+            } else {
+                nodes[i] = next;
+                order[next++] = builder.getLeft(node);
+                order[next++] = builder.getRight(node);
+            }
+        }
+        return new FlatTree(nodes);
+    }
+
+    /**
+     * Lays out the tree whose paths are the codes of table, 0 going left
+     */
+    public static FlatTree of(CodeTable table) {
+        return of(table.getCodes(), table.getLengths());
+    }
+
+    /**
+     * Lays out the tree whose paths are the given codes, 0 going left
+     *
+     * @param codes The code of every symbol, in the lowest bits
+     * @param lengths The code length of every symbol, 0 for symbols not in the code
+     * @throws IllegalArgumentException If a code is the start of another one
+     */
+    public static FlatTree of(long[] codes, int[] lengths) {
+        // First a trie in the order the codes come, children[2 * node + bit], 0 meaning none
+        int capacity = 1;
+        for (int length : lengths) capacity += length;
+        int[] children = new int[2 * capacity];
+        int[] symbols = new int[capacity];
+        Arrays.fill(symbols, -1);
+        int size = 1;
+        for (int s = 0; s < lengths.length; s++) {
+            int node = 0;
+            for (int bit = lengths[s] - 1; bit >= 0; bit--) {
+                if (symbols[node] >= 0) throw new IllegalArgumentException("The codes aren't prefix free");
+                int slot = 2 * node + (int) ((codes[s] >>> bit) & 1);
+                if (children[slot] == 0) children[slot] = size++;
+                node = children[slot];
+            }
+            if (lengths[s] > 0) {
+                if (symbols[node] >= 0 || children[2 * node] != 0 || children[2 * node + 1] != 0) {
+                    throw new IllegalArgumentException("The codes aren't prefix free");
+                }
+                symbols[node] = s;
+            }
+        }
+        if (size == 1) return new FlatTree(new int[0]);
+
+        // Then breadth first, where a missing child still takes a place next to its sibling
+        int[] order = new int[2 * size];
+        int[] nodes = new int[order.length];
+        int next = 1;
+        for (int i = 0; i < next; i++) {
+            int node = order[i];
+            if (node < 0) {
+                nodes[i] = EMPTY;
+            } else if (symbols[node] >= 0) {
+                nodes[i] = -1 - symbols[node];
+            } else {
+                nodes[i] = next;
+                order[next++] = children[2 * node] == 0 ? -1 : children[2 * node];
+                order[next++] = children[2 * node + 1] == 0 ? -1 : children[2 * node + 1];
+            }
+        }
+        return new FlatTree(Arrays.copyOf(nodes, next));
+    }
+
+    /**
+     * @return The number of nodes, missing children included
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Decodes symbols from in into out by walking the tree, until out is full
+     * or there are no bits left. Bits are taken from in up to MAX_PEEK at a
+     * time, so codes can be of any length.
+     *
+     * @return The number of symbols decoded, -1 if there were no bits left at all
+     * @throws IOException If the bits follow a missing child, or the tree is empty
+     * and there are bits left
+     */
+    public int decode(BitReader in, byte[] out, int offset, int length) throws IOException {
+        int[] nodes = this.nodes;
+        if (nodes.length == 0) {
+            // The tree of an empty file, whose encoding has no bits
+            if (in.available() == 0) return -1;
+            throw new IOException("The bits aren't a code of the tree");
+        }
+        int count = 0;
+        int node = 0;
+
+        while (count < length) {
+            int available = in.available();
+            if (available == 0) break;
+            long bits = in.peek(available);
+            int used = 0;
+            while (used < available) {
+                int child = nodes[node] + (int) ((bits >>> (available - ++used)) & 1);
+                int entry = nodes[child];
+                if (entry >= 0) {
+                    node = child;
+                } else if (entry == EMPTY) {
+                    throw new IOException("The bits aren't a code of the tree");
+                } else {
+                    out[offset + count++] = (byte) (-1 - entry);
+                    node = 0;
+                    if (count == length) break;
+                }
+            }
+            in.skip(used);
+        }
+        return count == 0 && length > 0 ? -1 : count;
+    }
+
+    /**
+     * @return The path from the root to every symbol as a string of 0s and 1s,
+     * null for symbols not in the tree
+     */
+    public String[] encodings(int alphabetSize) {
+        String[] encodings = new String[alphabetSize];
+        if (nodes.length == 0) return encodings;
+        // Children always come after their parents, so one pass from the root down works
+        String[] paths = new String[nodes.length];
+        paths[0] = "";
+        for (int i = 0; i < nodes.length; i++) {
+            int entry = nodes[i];
+            if (entry == EMPTY) continue;
+            if (entry < 0) {
+                encodings[-1 - entry] = paths[i];
+            } else {
+                paths[entry] = paths[i] + "0";
+                paths[entry + 1] = paths[i] + "1";
+            }
+        }
+        return encodings;
+    }
+
+    /**
+     * @return The path from the root to every symbol in the lowest bits, the last
+     * step being the lowest bit, and 0 for symbols not in the tree
+     * @throws IllegalStateException If a path is longer than 64 steps
+     */
+    public long[] codes(int alphabetSize) {
+        long[] codes = new long[alphabetSize];
+        int[] depths = depths();
+        long[] paths = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            int entry = nodes[i];
+            if (entry == EMPTY) continue;
+            if (depths[i] > 64) throw new IllegalStateException("Codes longer than 64 bits are not supported");
+            if (entry < 0) {
+                codes[-1 - entry] = paths[i];
+            } else {
+                paths[entry] = paths[i] << 1;
+                paths[entry + 1] = (paths[i] << 1) | 1;
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * @return The length of the path from the root to every symbol, 0 for symbols
+     * not in the tree
+     */
+    public int[] codeLengths(int alphabetSize) {
+        int[] lengths = new int[alphabetSize];
+        int[] depths = depths();
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] < 0 && nodes[i] != EMPTY) lengths[-1 - nodes[i]] = depths[i];
+        }
+        return lengths;
+    }
+
+    // The depth of every node, the root's being 0
+    private int[] depths() {
+        int[] depths = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] >= 0) {
+                depths[nodes[i]] = depths[i] + 1;
+                depths[nodes[i] + 1] = depths[i] + 1;
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Makes a TreeNode copy of the tree, for printing it. Every node's probability
+     * is its symbols' share of the counts, and 0 when there are none.
+     *
+     * @param counts The count of every symbol, or null
+     * @return The root TreeNode, null if the tree is empty
+     */
+    public TreeNode toTreeNode(long[] counts) {
+        if (nodes.length == 0) return null;
+
+        // Weights from the bottom up, then nodes the same way so children are made first
+        long[] weights = new long[nodes.length];
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            int entry = nodes[i];
+            if (entry >= 0) {
+                weights[i] = weights[entry] + weights[entry + 1];
+            } else if (entry != EMPTY && counts != null) {
+                weights[i] = counts[-1 - entry];
+            }
+        }
+        long total = weights[0];
+
+        TreeNode[] treeNodes = new TreeNode[nodes.length];
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            int entry = nodes[i];
+            if (entry == EMPTY) continue;
+            double prob = total == 0 ? 0 : (double) weights[i] / total;
+            if (entry < 0) {
+                treeNodes[i] = new TreeNode(new CharFreq((char) (-1 - entry), prob), null, null);
+            } else {
+                treeNodes[i] = new TreeNode(new CharFreq(null, prob), treeNodes[entry], treeNodes[entry + 1]);
+            }
+        }
+        return treeNodes[0];
+    }
+}
@@ -0,0 +1,159 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class counts how many times each byte value occurs in a file.
+ * The file is read in large blocks into a reused buffer and counted
+ * straight into a primitive array, without going through a Scanner
+ * or a charset decoder. Very large files can also be memory mapped
+ * and counted in parallel.
+ */
+public class Histogram {
+    // Number of distinct byte values
+    public static final int SYMBOLS = 256;
+
+    // Size of the block read from the file at a time
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Size of the file region one parallel worker maps and counts on its own
+    private static final long CHUNK_SIZE = 1 << 24;
+
+    // Don't instantiate
+    private Histogram() { }
+
+    /**
+     * Counts every byte of the given file
+     *
+     * @param fileName The file to count
+     * @return Array of size 256, where each index holds the count of that byte value
+     * @throws IOException If the file can't be read
+     */
+    public static long[] count(String fileName) throws IOException {
+        long[] counts = new long[SYMBOLS];
+        try (InputStream in = Files.newInputStream(Paths.get(fileName))) {
+            count(in, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Counts every remaining byte of the stream into counts
+     *
+     * @param in The stream to read until the end
+     * @param counts Array of size 256 to add the counts to
+     * @throws IOException If the stream can't be read
+     */
+    public static void count(InputStream in, long[] counts) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            count(buffer, 0, read, counts);
+        }
+    }
+
+    /**
+     * Counts every byte of the given file on a pool of worker threads.
+     * The file is split into chunks which are each memory mapped separately,
+     * so files bigger than the 2 GB limit of a single MappedByteBuffer work.
+     * Every chunk gets its own histogram, and the histograms are added together.
+     *
+     * @param fileName The file to count
+     * @param parallelism The number of worker threads to use
+     * @return Array of size 256, where each index holds the count of that byte value
+     * @throws IOException If the file can't be read
+     */
+    public static long[] countParallel(String fileName, int parallelism) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            return pool.invoke(new ChunkCount(channel, 0, channel.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Counts the file region [start, end), splitting it in half until it fits in one chunk.
+    // Tasks are never serialized, the class is only Serializable through ForkJoinTask.
+    @SuppressWarnings("serial")
+    private static class ChunkCount extends RecursiveTask<long[]> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ChunkCount(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (end - start > CHUNK_SIZE) {
+                // Split on a chunk boundary so every leaf maps a whole chunk
+                long chunks = (end - start + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                long middle = start + chunks / 2 * CHUNK_SIZE;
+                ChunkCount right = new ChunkCount(channel, middle, end);
+                right.fork();
+                long[] counts = new ChunkCount(channel, start, middle).compute();
+                long[] rightCounts = right.join();
+                for (int i = 0; i < SYMBOLS; i++) counts[i] += rightCounts[i];
+                return counts;
+            }
+
+            long[] counts = new long[SYMBOLS];
+            try {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (region.hasRemaining()) {
+                    int read = Math.min(buffer.length, region.remaining());
+                    region.get(buffer, 0, read);
+                    count(buffer, 0, read, counts);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Counts bytes in buffer[from, to) into counts
+     */
+    public static void count(byte[] buffer, int from, int to, long[] counts) {
+        for (int i = from; i < to; i++) {
+            counts[buffer[i] & 0xFF]++;
+        }
+    }
+
+    /**
+     * Adds up all the counts
+     */
+    public static long total(long[] counts) {
+        long total = 0;
+        for (long c : counts) total += c;
+        return total;
+    }
+
+    /**
+     * @return The entropy of the counts in bits, which is the fewest bits any code can
+     * use for them
+     */
+    public static double entropyBits(long[] counts, long total) {
+        double bits = 0;
+        for (long count : counts) {
+            if (count > 0) bits += count * (Math.log((double) total / count) / Math.log(2));
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,457 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class compresses and decompresses data in memory, from and into
+ * byte arrays, ranges of byte arrays, and ByteBuffers (heap or direct).
+ * Encoded data is the container format described in ContainerFormat, so
+ * it can also be decoded by ContainerReader, and the same methods work
+ * on streams for data that doesn't fit in memory.
+ *
+ * Methods taking an output array or buffer fill it directly, without an
+ * extra copy of the whole result; maxEncodedLength and decodedLength tell
+ * how big it needs to be.
+ *
+ * A codec keeps nothing between calls, so once it is set up it can be
+ * shared by any number of threads, as long as the setters aren't called
+ * while it is in use. For a fixed code with no container around the data,
+ * HuffmanEncoder and HuffmanDecoder are immutable.
+ *
+ * Every encode and decode call is reported to the codec's CodecMetrics,
+ * which by default is CodecMetrics.NONE and measures nothing. The streams
+ * and Flow processors built on a codec don't report their blocks.
+ */
+public class HuffmanCodec {
+    // Container header, end marker and trailer
+    private static final int CONTAINER_OVERHEAD = ContainerFormat.HEADER_SIZE + ContainerFormat.TRAILER_SIZE;
+
+    private int blockSize = ContainerFormat.DEFAULT_BLOCK_SIZE;
+    private double minSaving = EncodedBlock.DEFAULT_MIN_SAVING;
+    private TrainedTable trainedTable;
+    private CodeTableCache codeTableCache;
+    private TableLibrary tableLibrary = new TableLibrary();
+    private CodecMetrics metrics = CodecMetrics.NONE;
+
+    /**
+     * Sets the most original bytes in one block
+     *
+     * @param size The block size in bytes, 1 MB by default
+     */
+    public void setBlockSize(int size) {
+        if (size < 1) throw new IllegalArgumentException("size must be at least 1");
+        blockSize = size;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets how much smaller than a block its coded form has to be for the block
+     * to be coded. Blocks that wouldn't shrink that much, such as compressed or
+     * random data, are stored as they are, which takes a copy to write and to
+     * read. The size is worked out from the block's counts before it is coded,
+     * and when even their entropy is too big no tree is built at all.
+     *
+     * @param fraction The least share of a block's size coding has to save, from 0 to
+     * 1, 0.02 by default. With 0 only blocks that coding would make bigger are stored,
+     * and with 1 every block is.
+     */
+    public void setMinimumSaving(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) throw new IllegalArgumentException("fraction must be between 0 and 1");
+        minSaving = fraction;
+    }
+
+    public double getMinimumSaving() {
+        return minSaving;
+    }
+
+    /**
+     * Sets a trained table to code every block with, instead of a code from
+     * each block's own counts. The table is also added to the library used
+     * for decoding.
+     *
+     * @param table The trained table, or null for none
+     */
+    public void setTrainedTable(TrainedTable table) {
+        if (table != null) tableLibrary.register(table);
+        trainedTable = table;
+    }
+
+    /**
+     * Sets a cache for blocks to take their codes from
+     *
+     * @param cache The cache, or null to always build a new code
+     */
+    public void setCodeTableCache(CodeTableCache cache) {
+        codeTableCache = cache;
+    }
+
+    /**
+     * Sets the trained tables known when decoding
+     */
+    public void setTableLibrary(TableLibrary library) {
+        if (trainedTable != null) library.register(trainedTable);
+        tableLibrary = library;
+    }
+
+    TableLibrary getTableLibrary() {
+        return tableLibrary;
+    }
+
+    /**
+     * Sets where the measurements of every call go
+     *
+     * @param metrics The metrics, or CodecMetrics.NONE to measure nothing
+     */
+    public void setMetrics(CodecMetrics metrics) {
+        if (metrics == null) throw new IllegalArgumentException("metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    public CodecMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The most bytes encoding length bytes can take
+     */
+    public long maxEncodedLength(long length) {
+        long blocks = (length + blockSize - 1) / blockSize;
+        // A block that coding wouldn't shrink is stored, so no payload is bigger than its block
+        return CONTAINER_OVERHEAD + blocks * ContainerFormat.BLOCK_HEADER_SIZE + length;
+    }
+
+    public byte[] encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    /**
+     * @return data[offset, offset + length) encoded, in a new array of just the right size
+     */
+    public byte[] encode(byte[] data, int offset, int length) {
+        HuffmanEncoder.checkRange(data.length, offset, length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+        try {
+            encode(data, offset, length, out);
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes data[offset, offset + length) into out, starting at outOffset
+     *
+     * @return The number of bytes written to out
+     * @throws IndexOutOfBoundsException If out doesn't have room, maxEncodedLength
+     * bytes are always enough
+     */
+    public int encode(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        HuffmanEncoder.checkRange(data.length, offset, length);
+        HuffmanEncoder.checkRange(out.length, outOffset, 0);
+        ArrayOutput sink = new ArrayOutput(out, outOffset, out.length);
+        try {
+            encode(data, offset, length, sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sink.position - outOffset;
+    }
+
+    /**
+     * Encodes the remaining bytes of src into dst. Both buffers' positions are
+     * moved past the bytes read and written.
+     *
+     * @throws BufferOverflowException If dst doesn't have room, in which case
+     * neither position is moved
+     */
+    public void encode(ByteBuffer src, ByteBuffer dst) {
+        int length = src.remaining();
+        int dstStart = dst.position();
+        try {
+            if (src.hasArray()) {
+                encode(src.array(), src.arrayOffset() + src.position(), length, new BufferOutput(dst));
+            } else {
+                CallMetrics call = startCall(CodecMetrics.Operation.ENCODE);
+                ContainerWriter writer = new ContainerWriter(new BufferOutput(dst), blockSize);
+                // A direct buffer is copied one block at a time into an array for the encoder
+                byte[] block = new byte[Math.min(blockSize, Math.max(1, length))];
+                ByteBuffer view = src.duplicate();
+                while (view.hasRemaining()) {
+                    int size = Math.min(block.length, view.remaining());
+                    view.get(block, 0, size);
+                    writeBlock(writer, block, 0, size, call);
+                }
+                writer.finish();
+                endCall(call);
+            }
+        } catch (BufferOverflowException e) {
+            dst.position(dstStart);
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        src.position(src.position() + length);
+    }
+
+    /**
+     * Encodes everything left in in and writes it to out. Neither stream is closed.
+     */
+    public void encode(InputStream in, OutputStream out) throws IOException {
+        CallMetrics call = startCall(CodecMetrics.Operation.ENCODE);
+        ContainerWriter writer = new ContainerWriter(out, blockSize);
+        byte[] block = new byte[blockSize];
+        int read;
+        while ((read = in.readNBytes(block, 0, blockSize)) > 0) {
+            writeBlock(writer, block, 0, read, call);
+        }
+        writer.finish();
+        endCall(call);
+    }
+
+    /**
+     * @return The number of bytes the encoded data in data[offset, offset + length)
+     * decodes to, found from the block headers without decoding anything
+     * @throws IOException If the data isn't a complete container
+     */
+    public static long decodedLength(byte[] data, int offset, int length) throws IOException {
+        HuffmanEncoder.checkRange(data.length, offset, length);
+        long total = 0;
+        try (ContainerReader in = new ContainerReader(new ByteArrayInputStream(data, offset, length))) {
+            while (in.nextBlock()) total += in.getOriginalSize();
+        }
+        return total;
+    }
+
+    public byte[] decode(byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * @return The bytes encoded in data[offset, offset + length), in a new array
+     */
+    public byte[] decode(byte[] data, int offset, int length) throws IOException {
+        long decodedLength = decodedLength(data, offset, length);
+        if (decodedLength > Integer.MAX_VALUE - 8) throw new IOException("Decoded data doesn't fit in an array");
+        byte[] out = new byte[(int) decodedLength];
+        decode(data, offset, length, out, 0);
+        return out;
+    }
+
+    /**
+     * Decodes the encoded data in data[offset, offset + length) into out, starting at outOffset
+     *
+     * @return The number of bytes written to out
+     * @throws IOException If out doesn't have room, or the data is corrupt
+     */
+    public int decode(byte[] data, int offset, int length, byte[] out, int outOffset) throws IOException {
+        HuffmanEncoder.checkRange(data.length, offset, length);
+        HuffmanEncoder.checkRange(out.length, outOffset, 0);
+        CallMetrics call = startCall(CodecMetrics.Operation.DECODE);
+        int position = outOffset;
+        try (ContainerReader in = new ContainerReader(new ByteArrayInputStream(data, offset, length), tableLibrary)) {
+            in.setMetrics(call);
+            while (in.nextBlock()) {
+                if (in.getOriginalSize() > out.length - position) throw new IOException("Output buffer is too small");
+                position += in.readBlock(out, position);
+            }
+        }
+        endCall(call);
+        return position - outOffset;
+    }
+
+    /**
+     * Decodes one container from src into dst. Both buffers' positions are moved
+     * past the bytes read and written.
+     *
+     * @throws IOException If dst doesn't have room, or the data is corrupt, in which
+     * case neither position is moved
+     */
+    public void decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int dstStart = dst.position();
+        try {
+            decodeBuffer(src, dst);
+        } catch (IOException | RuntimeException e) {
+            dst.position(dstStart);
+            throw e;
+        }
+    }
+
+    private void decodeBuffer(ByteBuffer src, ByteBuffer dst) throws IOException {
+        CallMetrics call = startCall(CodecMetrics.Operation.DECODE);
+        BufferInput in = new BufferInput(src.duplicate());
+        ContainerReader reader = new ContainerReader(in, tableLibrary);
+        reader.setMetrics(call);
+        byte[] block = null;
+        while (reader.nextBlock()) {
+            int size = reader.getOriginalSize();
+            if (size > dst.remaining()) throw new IOException("Output buffer is too small");
+            if (dst.hasArray()) {
+                reader.readBlock(dst.array(), dst.arrayOffset() + dst.position());
+                dst.position(dst.position() + size);
+            } else {
+                // A direct buffer is filled from an array one block at a time, as big as the
+                // blocks that have come so far rather than the block size the header claims
+                if (block == null || block.length < size) block = new byte[size];
+                reader.readBlock(block, 0);
+                dst.put(block, 0, size);
+            }
+        }
+        src.position(in.buffer.position());
+        endCall(call);
+    }
+
+    /**
+     * Decodes one container from in and writes the bytes to out. Neither stream is closed.
+     */
+    public void decode(InputStream in, OutputStream out) throws IOException {
+        CallMetrics call = startCall(CodecMetrics.Operation.DECODE);
+        ContainerReader reader = new ContainerReader(in, tableLibrary);
+        reader.setMetrics(call);
+        byte[] block = new byte[0];
+        while (reader.nextBlock()) {
+            if (block.length < reader.getOriginalSize()) block = new byte[reader.getOriginalSize()];
+            out.write(block, 0, reader.readBlock(block, 0));
+        }
+        endCall(call);
+    }
+
+    private void encode(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        CallMetrics call = startCall(CodecMetrics.Operation.ENCODE);
+        ContainerWriter writer = new ContainerWriter(out, blockSize);
+        for (int start = offset; start < offset + length; start += blockSize) {
+            writeBlock(writer, data, start, Math.min(blockSize, offset + length - start), call);
+        }
+        writer.finish();
+        endCall(call);
+    }
+
+    // Encodes one block the way this codec is set up to
+    void writeBlock(ContainerWriter writer, byte[] data, int offset, int length) throws IOException {
+        writeBlock(writer, data, offset, length, null);
+    }
+
+    private void writeBlock(ContainerWriter writer, byte[] data, int offset, int length, CallMetrics call) throws IOException {
+        writer.writeBlock(encodeBlock(data, offset, length, call));
+    }
+
+    /**
+     * Encodes one block, timing it and counting its bytes in call unless that is null
+     */
+    EncodedBlock encodeBlock(byte[] data, int offset, int length, CallMetrics call) {
+        EncodedBlock block;
+        if (trainedTable != null) {
+            block = EncodedBlock.encode(data, offset, length, trainedTable, minSaving, call);
+        } else {
+            block = EncodedBlock.encode(data, offset, length, codeTableCache, minSaving, call);
+        }
+        if (call != null) call.addBytes(length, ContainerFormat.BLOCK_HEADER_SIZE + block.payloadSize);
+        return block;
+    }
+
+    /**
+     * @return A new call to measure, or null if the metrics are off
+     */
+    CallMetrics startCall(CodecMetrics.Operation operation) {
+        return metrics.isEnabled() ? new CallMetrics(operation) : null;
+    }
+
+    /**
+     * Adds the container header and trailer to the bytes of a call from startCall,
+     * and records it
+     */
+    void endCall(CallMetrics call) {
+        if (call == null) return;
+        if (call.getOperation() == CodecMetrics.Operation.ENCODE) {
+            call.addBytes(0, CONTAINER_OVERHEAD);
+        } else {
+            call.addBytes(CONTAINER_OVERHEAD, 0);
+        }
+        metrics.record(call.finish());
+    }
+
+    // Writes into a byte array range, failing once it is full
+    private static class ArrayOutput extends OutputStream {
+        private final byte[] array;
+        private final int limit;
+        private int position;
+
+        ArrayOutput(byte[] array, int position, int limit) {
+            this.array = array;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) {
+            if (position == limit) throw new IndexOutOfBoundsException("Output buffer is too small");
+            array[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (len > limit - position) throw new IndexOutOfBoundsException("Output buffer is too small");
+            System.arraycopy(b, off, array, position, len);
+            position += len;
+        }
+    }
+
+    // Writes into a ByteBuffer, which throws BufferOverflowException once it is full
+    private static class BufferOutput extends OutputStream {
+        private final ByteBuffer buffer;
+
+        BufferOutput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.put(b, off, len);
+        }
+    }
+
+    // Reads from a ByteBuffer, keeping track of how far it got
+    private static class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min(Math.max(n, 0), buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+    }
+}
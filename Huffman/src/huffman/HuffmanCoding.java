@@ -1,9 +1,17 @@
 package huffman;
  
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
  
@@ -15,10 +23,51 @@ import java.util.Collections;
  * @author Prince Rawal
  */
 public class HuffmanCoding {
+    /**
+     * The ways decode() can turn bits back into characters
+     */
+    public enum DecodeEngine {
+        // Walk the tree one bit at a time, in its FlatTree layout
+        TREE,
+        // Look up several bits at a time in tables built from the FlatTree
+        TABLE,
+        // Walk the TreeNode copy of the tree one bit at a time, to compare with TREE
+        NODES
+    }
+
+    /**
+     * The layouts encode() can write and decode() can read
+     */
+    public enum Format {
+        // Only the padded bits, decoding needs the tree from this object
+        BITSTRING,
+        // Canonical codes, with a header of code lengths in front of the padded bits
+        CANONICAL,
+        // Canonical codes in the block container described in ContainerFormat
+        CONTAINER,
+        // An adaptive code updated after every character, needing no counts and no header
+        ADAPTIVE
+    }
+
     private String fileName;
     private ArrayList<CharFreq> sortedCharFreqList;
+    private FlatTree tree;
+    // Made from tree only when getHuffmanRoot() asks for it
     private TreeNode huffmanRoot;
     private String[] encodings;
+    private long[] charCounts;
+    private int histogramThreads = 1;
+    private DecodeEngine decodeEngine = DecodeEngine.TREE;
+    private Format format = Format.BITSTRING;
+    private CodeTable codeTable;
+    private int blockSize = ContainerFormat.DEFAULT_BLOCK_SIZE;
+    private double minSaving = EncodedBlock.DEFAULT_MIN_SAVING;
+    private int encoderThreads = 1;
+    private int decoderThreads = 1;
+    private TrainedTable trainedTable;
+    private TableLibrary tableLibrary = new TableLibrary();
+    private CodeTableCache codeTableCache;
+    private CodecMetrics metrics = CodecMetrics.NONE;
  
     /**
      * Constructor used by the driver, sets filename
@@ -30,30 +79,175 @@ public class HuffmanCoding {
     }
  
     /**
-     * Reads from filename character by character, and sets sortedCharFreqList
-     * to a new ArrayList of CharFreq objects with frequency > 0, sorted by frequency
+     * Sets how many threads makeSortedList uses to count the file. With more
+     * than one thread the file is memory mapped and counted in parallel chunks,
+     * which only pays off for very large files.
+     *
+     * @param threads The number of counting threads, 1 by default
+     */
+    public void setHistogramThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        histogramThreads = threads;
+    }
+
+    /**
+     * Sets how decode() turns bits back into characters
+     *
+     * @param engine TREE to walk the tree bit by bit (the default), TABLE to use lookup tables,
+     * or NODES to walk the TreeNode tree from getHuffmanRoot() bit by bit
+     */
+    public void setDecodeEngine(DecodeEngine engine) {
+        decodeEngine = engine;
+    }
+
+    /**
+     * Sets the layout of encoded files. With CANONICAL, makeEncodings() hands out
+     * canonical codes, and encode() writes their lengths in a small header so decode()
+     * can rebuild the code from the file alone, without makeSortedList() or makeTree().
+     *
+     * With CONTAINER, the file is split into blocks that each get their own canonical
+     * code from their own counts, inside a container that also records sizes and
+     * checksums. decode() then always uses lookup tables.
+     *
+     * With ADAPTIVE, encode() reads the file only once and needs none of the earlier
+     * methods: the code starts out empty and is updated after every character, in the
+     * same way by encode() and decode(). Compression is a little worse on small files,
+     * and coding is slower since the tree changes all the time.
+     *
+     * @param format BITSTRING (the default), CANONICAL, CONTAINER or ADAPTIVE
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Sets how many threads encode() uses for the CONTAINER format. Blocks are
+     * encoded in parallel but written in order, so the encoded file is the same
+     * whatever the number of threads.
+     *
+     * @param threads The number of encoding threads, 1 by default
+     */
+    public void setEncoderThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        encoderThreads = threads;
+    }
+
+    /**
+     * Sets how many threads decode() uses for the CONTAINER format. With more than
+     * one thread, blocks are found through the index at the end of the encoded file
+     * and decoded straight into their place in the decoded file.
+     *
+     * @param threads The number of decoding threads, 1 by default
+     */
+    public void setDecoderThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        decoderThreads = threads;
+    }
+
+    /**
+     * Sets a trained table for encode() to code every block of the CONTAINER format
+     * with. The blocks then only hold the table's ID, and the file is read only once,
+     * so makeSortedList(), makeTree() and makeEncodings() aren't needed. The table is
+     * also added to the library decode() looks tables up in.
+     *
+     * @param table The trained table, or null to give every block its own code again
+     */
+    public void setTrainedTable(TrainedTable table) {
+        if (table != null) tableLibrary.register(table);
+        trainedTable = table;
+    }
+
+    /**
+     * Sets the library of trained tables decode() looks up the tables of a CONTAINER
+     * file in, which only matters for files encoded with a trained table
+     *
+     * @param library The trained tables known to decode()
+     */
+    public void setTableLibrary(TableLibrary library) {
+        if (trainedTable != null) library.register(trainedTable);
+        tableLibrary = library;
+    }
+
+    /**
+     * Sets a cache of codes for recent counts. makeTree() then reuses a cached code
+     * when the file's counts are close enough to ones seen before, instead of building
+     * the tree again, and so do the blocks of the CONTAINER format. One cache can be
+     * shared by many HuffmanCoding objects.
+     *
+     * @param cache The cache, or null to always build the tree
+     */
+    public void setCodeTableCache(CodeTableCache cache) {
+        codeTableCache = cache;
+    }
+
+    /**
+     * Sets the most original bytes in one block of the CONTAINER format
+     *
+     * @param size The block size in bytes, 1 MB by default
+     */
+    public void setBlockSize(int size) {
+        if (size < 1) throw new IllegalArgumentException("size must be at least 1");
+        blockSize = size;
+    }
+
+    /**
+     * Sets how much smaller than a block of the CONTAINER format its coded form has
+     * to be for the block to be coded. Blocks that wouldn't shrink that much, such as
+     * compressed or random data, are stored as they are.
+     *
+     * @param fraction The least share of a block's size coding has to save, from 0 to 1,
+     * 0.02 by default
+     */
+    public void setMinimumSaving(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) throw new IllegalArgumentException("fraction must be between 0 and 1");
+        minSaving = fraction;
+    }
+
+    /**
+     * Sets where the time of every step goes. makeSortedList(), makeTree() and
+     * makeEncodings() are each recorded as a BUILD_CODE call of one phase, and
+     * encode() and decode() as an ENCODE or DECODE call with the sizes of the files.
+     *
+     * @param metrics The metrics, or CodecMetrics.NONE (the default) to measure nothing
+     */
+    public void setMetrics(CodecMetrics metrics) {
+        if (metrics == null) throw new IllegalArgumentException("metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reads from filename in byte blocks, and sets sortedCharFreqList
+     * to a new ArrayList of CharFreq objects, one per byte value with frequency > 0,
+     * sorted by frequency
      */
     public void makeSortedList() {
-        StdIn.setFile(fileName);
- 
-        int [] char_count = new int [128];
-       
-        // Sets the count of all of the characters to 0
-        for (int i = 0; i < char_count.length; i++){
-            char_count[i] = 0;
-        }
- 
-        int num_char_total = 0;
- 
-        while (StdIn.hasNextChar() == true){
-            // Incrementing the count of character based on ASCII index
-            char char_value_index = StdIn.readChar();
-            char_count[char_value_index]++;
-            num_char_total++;
+        CallMetrics call = startCall(CodecMetrics.Operation.BUILD_CODE);
+        countChars();
+        endCall(call, CodecMetrics.Phase.HISTOGRAM, fileName, null);
+    }
+
+    private void countChars() {
+        long [] char_count;
+
+        // Counts the bytes of the file in large blocks instead of one char at a time
+        try {
+            if (histogramThreads > 1){
+                char_count = Histogram.countParallel(fileName, histogramThreads);
+            } else {
+                char_count = Histogram.count(fileName);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not open " + fileName);
+            return;
         }
+
+        charCounts = char_count;
+        long num_char_total = Histogram.total(char_count);
+
        
         sortedCharFreqList = new ArrayList<>();
  
+        // Every byte value is a character, so binary files and UTF-8 text work too
         for (int i = 0; i < char_count.length; i++){
             if (char_count[i] != 0){
                 CharFreq add_char = new CharFreq((char)i, (double)char_count[i]/num_char_total);
@@ -63,7 +257,7 @@ public class HuffmanCoding {
  
         if (sortedCharFreqList.size() == 1){
             char extra_char = ' ';
-            if (sortedCharFreqList.get(0).getCharacter() == 127){
+            if (sortedCharFreqList.get(0).getCharacter() == Histogram.SYMBOLS - 1){
                 extra_char = (char) 0;
             } else {
                 extra_char = (char)(sortedCharFreqList.get(0).getCharacter() + 1);
@@ -77,363 +271,85 @@ public class HuffmanCoding {
     }
  
     /**
-     * Uses sortedCharFreqList to build a huffman coding tree, and stores its root
-     * in huffmanRoot
+     * Uses sortedCharFreqList to build a huffman coding tree. The tree is built by
+     * TreeBuilder from the exact counts of makeSortedList(), so no probabilities are
+     * added up along the way, and kept as a FlatTree; getHuffmanRoot() makes a TreeNode
+     * copy of it. With a code table cache set, a cached code close enough to these
+     * counts is used instead.
      */
- 
-   
- 
     public void makeTree() {
- 
-        Queue <CharFreq> source = new Queue<CharFreq>();
-        Queue <TreeNode> target = new Queue<TreeNode>();
-       
-        TreeNode left = new TreeNode();
-        TreeNode right = new TreeNode();  
- 
-        // Make all data values a tree node (no children), and add to the source tree
-        for (int i = 0; i < sortedCharFreqList.size(); i++){
-
-            char data_char = sortedCharFreqList.get(i).getCharacter(); 
-            double data_prob = sortedCharFreqList.get(i).getProbOcc(); 
+        CallMetrics call = startCall(CodecMetrics.Operation.BUILD_CODE);
+        buildTree(call);
+        endCall(call, CodecMetrics.Phase.TREE_BUILD, null, null);
+    }
 
-            CharFreq data = new CharFreq(data_char, data_prob);
-            source.enqueue(data);
+    private void buildTree(CallMetrics call) {
+        huffmanRoot = null;
+        // A cached code comes as lengths, laid out as a tree of canonical codes. A file of one
+        // symbol doesn't use the cache: its tree also has the placeholder symbol makeSortedList()
+        // adds with a probability of 0, which the counts the cache goes by don't have.
+        if (codeTableCache != null && charCounts != null && Histogram.total(charCounts) > 0
+                && sortedCharFreqList.get(0).getProbOcc() > 0){
+            tree = FlatTree.of(codeTableCache.lookup(charCounts, call));
+            return;
         }
-       
-        int size_target = 0;
-        
-        while (source.isEmpty() == false){
-           
-            double source_key = 0;
-            double target_key = 0;
- 
-            boolean source_full = false;
-            boolean target_full = false;
- 
-            boolean children_non_null = false;
- 
-            size_target = target.size();
-           
-            boolean first_encoded = false;
- 
-            if (source.isEmpty() == false){
-                source_full = true;
-                source_key = source.peek().getProbOcc();
-            }
- 
-            if (target.isEmpty() == false){
-                target_full = true;
-                target_key = target.peek().getData().getProbOcc();
-            }
- 
-            int count_num_encoded = 0;
- 
-            if (source_full == true && target_full == true && source != null && target != null){
-                int source_less_target = 1;
-                if (source_key <= target_key){
-                    source_less_target = 0;
-                } 
-                // try with switch so you can just use default case for when its bigger in source
-
-                switch (source_less_target){
-                    
-                    case 0: TreeNode source_node = new TreeNode(source.dequeue(), null, null);
-                            left = source_node;
-                            count_num_encoded++;
-                            first_encoded = true;  
-                            break;
-                    default: first_encoded = true;
-                            left = target.dequeue();
-                            count_num_encoded++;
-                            break;
-                }
-            } else if (source_full == true && target_full == false && source != null){
-                // Target has nothing in it, need to dequeue the first one from source
-                TreeNode source_node = new TreeNode(source.dequeue(), null, null);
-                first_encoded = true;  
-                left = source_node;  
-                count_num_encoded++;
-               
-            } else if (target_full == true && source_full == false && target != null){
-                first_encoded = true;
-                // Source has nothing it in, need to dequeue the first one from target
-                left = target.dequeue();
-                count_num_encoded++;
-            }
- 
-            if (left == null){
-                first_encoded = false;
-            }
- 
-            // UNFINISHED: still have to look for the next smallest to dequeue and to add into right child -- finished.
-           
-            if (source.isEmpty() == false){
-                source_full = true;
-                source_key = source.peek().getProbOcc();
-            }
- 
-            if (source.isEmpty() == true){
-                source_full = false;
-            }
- 
-            if (target.isEmpty() == false){
-                target_full = true;
-                target_key = target.peek().getData().getProbOcc();
-            }
-           
-            if (target.isEmpty() == true){
-                target_full = false;
-            }
- 
-            boolean second_encoded = false;
- 
-            if (source_full == true && target_full == true && source != null && target != null){
-                int source_less_target = 0;
-                if (source_key <= target_key){
-                    source_less_target = 1;
-                }
-                switch (source_less_target){
-                    case 1: TreeNode source_node = new TreeNode(source.dequeue(), null, null);
-                            second_encoded = true;
-                            right = source_node;
-                            count_num_encoded++; 
-                            break;
-                    default: right = target.dequeue();
-                            second_encoded = true;
-                            count_num_encoded++; 
-                            break; 
-                }
-            } else if (source_full == true && target_full == false && source != null){
-                // Target has nothing in it, need to dequeue the first one from source
-                TreeNode source_node = new TreeNode(source.dequeue(), null, null);
-                right = source_node;
-                count_num_encoded++; 
-                second_encoded = true;
-            } else if (target_full == true && source_full == false && target != null){
-                second_encoded = true;
-                right = target.dequeue();
-                count_num_encoded++; 
-            }
- 
-            if (right == null){
-                second_encoded = false;
-            }
- 
-            if (right != null && left != null){
-                // using as confirmation that children are non-null, because value of second_encoded was messed up earlier
-                children_non_null = true; // delete from condition later
-            }
-
-            boolean combine_allowed = true; 
-
-            // System.out.println("count num encoded: " + count_num_encoded); 
-            
-            if (first_encoded != false && second_encoded != false && children_non_null== true && combine_allowed == true){
-                // Adds together the probabilites for the new parent node
-                CharFreq base_probability = new CharFreq(null, left.getData().getProbOcc() + right.getData().getProbOcc());
-                TreeNode root = new TreeNode(base_probability, left, right);
-
-                if (base_probability.getProbOcc() > 1){
-                    combine_allowed = false; 
-                } else {
-                    combine_allowed = true;
-                    target.enqueue(root);
-                }
-                
-            }
-
-            //PROBLEM: getting trees with 1.59, 1.24 probability 
-                // need to avoid merging further if the combo probocc becomes more than 1 
-
-            int left_done = 0; 
-            int right_done = 0; 
-
-            if (left == null || right == null && !(left == null && right == null)){
-                if (left != null){
-                    left_done++; 
-                    if (right == null){
-                        target.enqueue(left);
-                    }
-                } else if (right != null){
-                    right_done++; 
-                    if (left == null){
-                        target.enqueue(right);
-                    }
-                }
-            }
 
-            // System.out.println(left_done + "left"); 
-            // System.out.println(right_done + "right"); 
+        int [] symbols = new int [sortedCharFreqList.size()];
+        long [] weights = new long [symbols.length];
 
-            // System.out.println("count num encoded: " + count_num_encoded); 
-
-            
- 
-            // System.out.println("WHILE 1 -loop");
-       
+        // sortedCharFreqList is already in order of count, which is the order TreeBuilder needs
+        for (int i = 0; i < symbols.length; i++){
+            symbols[i] = sortedCharFreqList.get(i).getCharacter();
+            weights[i] = charCounts[symbols[i]];
         }
 
-        // need to 
-        boolean combine_allowed_dup = true;
-
-        while (target.size() != 1 && target != null){
-
-            // System.out.println("WHILE 2 -loop");
-            // PROBLEM: goes into infinite loop probably because of while condition -- CHANGE TO != 1 -- fixed. 
-            // PROBLEM: null pointer 
-                // probably issue with either the pointers to l/r being null or target being null
-                // -- fixed.
-
-            TreeNode left_copy = left; 
-            TreeNode right_copy = right; 
-
-            int left_done = 0; 
-            int right_done = 0; 
-
-            for (int i = 0; i < 2; i++){
-                if (i == 0 && target != null && left_copy != null){
-                    left_copy = target.dequeue(); 
-                    left_done++; 
-                } else if (i == 1 && target != null && right_copy != null){
-                    right_copy = target.dequeue(); 
-                    right_done++; 
-                }
-            }
-
-            // System.out.println("right" + right_done); 
-            // System.out.println("left" +left_done); 
-            
-            /* 
-
-            !! NOT WORKING, IS ONLY ADDING SOME OF THE TARGET NODES!!
-            for (int i = 0; i < 2; i++){
-                if (left_done == 0){
-                    left_copy = target.dequeue(); 
-                } 
-
-                if (right_done == 0 && left_done > 0){
-                    right_copy = target.dequeue(); 
-                }
-            }
-            */
-            
-            CharFreq base_probability; 
-            TreeNode root;  
-
-            if (left_done > 0 && right_done > 0){
-                combine_allowed_dup = true; 
-            }
-
-            if (combine_allowed_dup == true){
-                base_probability = new CharFreq(null, (left_copy.getData().getProbOcc() + right_copy.getData().getProbOcc()));
-                root = new TreeNode(base_probability, left_copy, right_copy);
-                // huffmanRoot.enqueue(root); 
-                target.enqueue(root);
-            }
-            
-            
-        }
-        
-        huffmanRoot = target.dequeue();
+        tree = FlatTree.of(TreeBuilder.fromSortedLeaves(symbols, weights));
+    }
  
+    /**
+     * Builds a huffman coding tree like makeTree(), except that no character's path
+     * from the root is longer than maxCodeLength. The code lengths are the best ones
+     * possible under that limit, found with the package-merge algorithm, and the tree
+     * is laid out so its paths are canonical codes.
+     *
+     * @param maxCodeLength The deepest any character may be in the tree
+     */
+    public void makeTree(int maxCodeLength) {
+        CallMetrics call = startCall(CodecMetrics.Operation.BUILD_CODE);
+        int [] code_lengths = PackageMerge.codeLengths(charCounts, maxCodeLength);
+        tree = FlatTree.of(CodeTable.fromLengths(code_lengths));
+        huffmanRoot = null;
+        endCall(call, CodecMetrics.Phase.TREE_BUILD, null, null);
     }
  
     /**
-     * Uses huffmanRoot to create a string array of size 128, where each
-     * index in the array contains that ASCII character's bitstring encoding. Characters not
+     * Uses the tree to create a string array of size 256, where each
+     * index in the array contains that byte value's bitstring encoding. Characters not
      * present in the huffman coding tree should have their spots in the array left null.
      * Set encodings to this array.
      */
    
-    private void encoding(String [] encode, TreeNode huffman_copy, String encoded){
-       
-        char root_char_ind;
-        String tree_path = "";
- 
-        /*  PREORDER (from Slides):
-        private void preorder(Node x, Queue<Key> q) {
-            if (x == null) return;
-            q.enqueue(x.key);
-            preorder(x.left, q); --> need to move left or right until it hits null (no children left)
-            preorder(x.right, q); }
-       
-        */
- 
-        // PROBLEM: still only encoding b (10) -- FIXED.
-        // Base Case: same as iterative base case (keep going until you hit null children)
- 
-        // PROBLEM: Null Pointer Excep. when checking if characters are null -- change if-condition -- FIXED.
- 
-        // huffman_copy.getData().getCharacter() == null &&
-       
-        // huffman_copy.getData().getCharacter() == null &&
- 
-        boolean left_non_null = true;
-        boolean right_non_null = true;
- 
-        if (huffman_copy.getRight() != null){
-            right_non_null = true;
-        }
-
-        // System.out.println(right_non_null + " 1 " + left_non_null); 
- 
-        if (huffman_copy.getLeft() != null){
-            left_non_null = true;
-            // System.out.println("zeros");
-            tree_path = "0";
-            encoding(encode, huffman_copy.getLeft(), encoded + tree_path);
-        }
-
-        // System.out.println(right_non_null + " 2 " + left_non_null); 
- 
-        if (huffman_copy.getLeft() != null){
-            left_non_null = true;
-        } else {
-            left_non_null = false;
-        }
-
-        // System.out.println(right_non_null + " 3 " + left_non_null); 
- 
-        if (huffman_copy.getRight() != null){
-            // System.out.println("ones");
-            right_non_null = true;
-            tree_path = "1";
-            // PROBLEM: method fails (only a-> shows up) -- move increments to recursion
-            // huffman_copy = huffman_copy.getRight();
-            encoding(encode, huffman_copy.getRight(), encoded + tree_path);
-        }
- 
-        // System.out.println(right_non_null + " 4 " + left_non_null);  
-
-        // If the root has no children + character isn't null
-        // add the string to the array
- 
-        if (huffman_copy.getLeft() == null && huffman_copy.getRight() == null && huffman_copy.getData().getCharacter() != null){
-            root_char_ind = huffman_copy.getData().getCharacter();                
-            encode [(int) root_char_ind] = encoded;
- 
-            // System.out.println(encoded + " - encoded");
-            return;
-        }
-        // PROBLEM: Extra '1' for makeEncodings,
-            //it's check if the corners aren't null and then adding the number anyway, even if it isn't in the path
- 
-            // PROBLEM: Removes too many bits from 'c's encoding -- fixed.
- 
-    }
- 
- 
      public void makeEncodings() {
+        CallMetrics call = startCall(CodecMetrics.Operation.BUILD_CODE);
  
         // PROBLEM: TA said iteratively requires more code, implement recursively --> PreOrder from slides
-        String [] encode = new String [128];
-        String encode_num = "";
+        String [] encode = new String [Histogram.SYMBOLS];
         char root_char_ind = ' ';
  
-        encoding(encode, huffmanRoot, encode_num);
+        // An empty file has no tree, and so no encodings
+        if (tree != null){
+            encode = tree.encodings(Histogram.SYMBOLS);
+        }
         encodings = encode;
 
+        // Keep only the code lengths from the tree, and hand out canonical codes for them
+        if (format == Format.CANONICAL || format == Format.CONTAINER){
+            codeTable = CodeTable.fromLengths(codeLengths());
+            encodings = codeTable.toEncodings();
+            tree = FlatTree.of(codeTable);
+            huffmanRoot = null;
+        }
+
         int num_encoded_total = 0; 
         for (int i = 0; i < encode.length; i++){
             if (encode[i] != null){
@@ -442,6 +358,7 @@ public class HuffmanCoding {
         }
 
         // System.out.println("ne: " + num_encoded_total); 
+        endCall(call, CodecMetrics.Phase.CODE_ASSIGNMENT, null, null);
        
         /*  
         // goes through the Huffman tree until it reaches a character that has null as it's value
@@ -495,23 +412,115 @@ public class HuffmanCoding {
  
  
     /**
-     * Using encodings and filename, this method makes use of the writeBitString method
-     * to write the final encoding of 1's and 0's to the encoded file.
+     * Using encodings and filename, this method writes the final encoding of 1's and 0's
+     * to the encoded file with a BitWriter, in the same format as writeBitString but
+     * without ever building the whole bit string in memory.
      *
      * @param encodedFile The file name into which the text file is to be encoded
      */
     public void encode(String encodedFile) {
-        StdIn.setFile(fileName);
- 
-        String final_encoded = "";
- 
-        while (StdIn.hasNextChar() == true){
-            int ind_char = (int) StdIn.readChar();
-            final_encoded += encodings[ind_char];
+        CallMetrics call = startCall(CodecMetrics.Operation.ENCODE);
+        encodeFile(encodedFile);
+        endCall(call, CodecMetrics.Phase.ENCODE, fileName, encodedFile);
+    }
+
+    private void encodeFile(String encodedFile) {
+        if (format == Format.CONTAINER){
+            encodeContainer(encodedFile);
+            return;
         }
- 
-        writeBitString(encodedFile, final_encoded);
- 
+        if (format == Format.ADAPTIVE){
+            encodeAdaptive(encodedFile);
+            return;
+        }
+
+        long [] codes = codeBits();
+        int [] code_lengths = codeLengths();
+        long total_bits = 0;
+
+        for (int i = 0; i < code_lengths.length; i++){
+            total_bits += charCounts[i] * code_lengths[i];
+        }
+
+        // The padding goes first, so the total number of bits is worked out from the counts
+        try (InputStream in = new FileInputStream(fileName);
+             OutputStream file_out = new FileOutputStream(encodedFile);
+             BitWriter out = new BitWriter(file_out)) {
+            if (format == Format.CANONICAL){
+                DataOutputStream header = new DataOutputStream(file_out);
+                codeTable.write(header);
+                header.flush();
+            }
+            out.writePadding(total_bits);
+
+            byte [] buffer = new byte [1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1){
+                for (int i = 0; i < read; i++){
+                    int ind_char = buffer[i] & 0xFF;
+                    out.write(codes[ind_char], code_lengths[ind_char]);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    // Writes the file as an indexed container, giving every block of blockSize bytes its own code,
+    // or coding them all with the trained table
+    private void encodeContainer(String encodedFile) {
+        try (InputStream in = new FileInputStream(fileName);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(encodedFile), 1 << 16);
+             ParallelEncoder encoder = new ParallelEncoder(encoderThreads, blockSize, true, trainedTable)) {
+            encoder.setCodeTableCache(codeTableCache);
+            encoder.setMinimumSaving(minSaving);
+            encoder.encode(in, out);
+        } catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    // Writes the file with an adaptive code, in a single pass over it
+    private void encodeAdaptive(String encodedFile) {
+        try (InputStream in = new FileInputStream(fileName);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(encodedFile), 1 << 16)) {
+            AdaptiveHuffman.encode(in, out);
+        } catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    // The bits of every encoding, the last character being the lowest bit
+    private long[] codeBits() {
+        long [] codes = new long [encodings.length];
+        for (int i = 0; i < encodings.length; i++){
+            if (encodings[i] != null){
+                codes[i] = parseCode(encodings[i]);
+            }
+        }
+        return codes;
+    }
+
+    // The length of every encoding, 0 for characters that have none
+    private int[] codeLengths() {
+        int [] code_lengths = new int [encodings.length];
+        for (int i = 0; i < encodings.length; i++){
+            if (encodings[i] != null){
+                code_lengths[i] = encodings[i].length();
+            }
+        }
+        return code_lengths;
+    }
+
+    private static long parseCode(String code) {
+        if (code.length() > 64){
+            throw new IllegalStateException("Encodings longer than 64 bits are not supported");
+        }
+        long bits = 0;
+        for (int i = 0; i < code.length(); i++){
+            bits = (bits << 1) | (code.charAt(i) - '0');
+        }
+        return bits;
     }
    
     /**
@@ -566,115 +575,137 @@ public class HuffmanCoding {
     }
  
     /**
-     * Using a given encoded file name, this method makes use of the readBitString method
-     * to convert the file into a bit string, then decodes the bit string using the
-     * tree, and writes it to a decoded file.
+     * Using a given encoded file name, this method reads the file a few bits at a time
+     * with a BitReader, decodes the bits using the decode engine that was set, and writes
+     * the characters to a decoded file. Memory use stays the same however large the
+     * encoded file is.
      *
      * @param encodedFile The file which has already been encoded by encode()
      * @param decodedFile The name of the new file we want to decode into
      */
     public void decode(String encodedFile, String decodedFile) {
-        StdOut.setFile(decodedFile);
-       
-        String encoded_file = "";
-        encoded_file = readBitString(encodedFile);
-       
-        char [] char_bits = new char [encoded_file.length()];
- 
-        for (int i = 0; i < char_bits.length; i++){
-            char_bits[i] = encoded_file.charAt(i);
-            // System.out.println(char_bits[i]);
+        CallMetrics call = startCall(CodecMetrics.Operation.DECODE);
+        decodeFile(encodedFile, decodedFile);
+        endCall(call, CodecMetrics.Phase.DECODE, encodedFile, decodedFile);
+    }
+
+    private void decodeFile(String encodedFile, String decodedFile) {
+        if (format == Format.CONTAINER){
+            decodeContainer(encodedFile, decodedFile);
+            return;
         }
- 
-        int num_letters_encoded = 0;
-       
-        for (int i = 0; i < encodings.length; i++){
-            if (encodings[i] != null){
-                // System.out.println((char)i + ": " + encodings[i]);
-                // PROBLEM: Goes into infinite loop when char with probability 0 is encountered -- FIXED.
- 
-                char check_0 = ' ';
- 
-                for (int j = 0; j < sortedCharFreqList.size(); j++){
-                    if (sortedCharFreqList.get(j).getProbOcc() == 0.0){
-                        check_0 = sortedCharFreqList.get(j).getCharacter();
-                    }
-                }
- 
-                if (check_0 != (char)i){
-                    num_letters_encoded++;
-                }
- 
-               
+        if (format == Format.ADAPTIVE){
+            try (InputStream in = new FileInputStream(encodedFile);
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(decodedFile), 1 << 16)) {
+                AdaptiveHuffman.decode(in, out);
+            } catch (IOException e) {
+                System.out.println("Error while reading file!");
             }
+            return;
         }
- 
-        // boolean all_encoded = false;
-        int num_encoded = 0;
-        TreeNode huffman_copy = huffmanRoot;
- 
-        while (num_encoded < num_letters_encoded){
- 
-            for (int i = 0; i < char_bits.length; i++){
-                if (char_bits[i] == '0'){
-                    if (huffman_copy != null){
-                        huffman_copy = huffman_copy.getLeft();
-                        if (huffman_copy.getData().getCharacter() != null){
-                            char_bits[i] = 'x';
-                            StdOut.print(huffman_copy.getData().getCharacter());
-                            huffman_copy = huffmanRoot;
-                            num_encoded++;
-                        }
-               
-                    }
-                   
-                }
-               
-                if (char_bits[i] == '1') {
-                    if (huffman_copy != null){
-                        huffman_copy = huffman_copy.getRight();
-                        if (huffman_copy.getData().getCharacter() != null){
-                            char_bits[i] = 'x';
-                            StdOut.print(huffman_copy.getData().getCharacter());
-                            // Start from the top again
-                            huffman_copy = huffmanRoot;
-                            num_encoded++;
-                        }
- 
-                       
-                    }
-                   
-                }
-               
- 
+
+        try (InputStream file_in = new BufferedInputStream(new FileInputStream(encodedFile));
+             BitReader in = new BitReader(file_in);
+             OutputStream out = new FileOutputStream(decodedFile)) {
+            // A canonical file carries its own code, which replaces anything in memory
+            if (format == Format.CANONICAL){
+                codeTable = CodeTable.read(new DataInputStream(file_in));
+                encodings = codeTable.toEncodings();
+                tree = FlatTree.of(codeTable);
+                huffmanRoot = null;
             }
- 
-            /*
-            for (int  i = 0; i < char_bits.length; i++){
-                System.out.println(char_bits[i]);
-               
+
+            in.skipPadding();
+
+            if (decodeEngine == DecodeEngine.TABLE){
+                decodeWithTable(in, out);
+            } else if (decodeEngine == DecodeEngine.NODES){
+                decodeWithNodes(in, out);
+            } else {
+                decodeWithTree(in, out);
             }
- 
-            */
- 
-            // Checks if all of the numbers from the array have been decoded (or set to empty character)
-            // LOGIC:
-            // To check if all are encoded - all characters must be x
-            // If all are x, then there are no number chars
-            // If you find even one non-x char, then all encoded = false
- 
-            /*
-            for (int i = 0; i < char_bits.length; i++){
-                if (char_bits[i] != 'x'){
-                    all_encoded = false;  
+        } catch (IOException e) {
+            System.out.println("Error while reading file!");
+        }
+    }
+
+    // Decodes every block of a container, in order or in parallel through its index
+    private void decodeContainer(String encodedFile, String decodedFile) {
+        if (decoderThreads > 1){
+            try (ParallelDecoder decoder = new ParallelDecoder(decoderThreads, tableLibrary)) {
+                decoder.decode(Paths.get(encodedFile), Paths.get(decodedFile));
+            } catch (IOException e) {
+                System.out.println("Error while reading file!");
+            }
+            return;
+        }
+
+        // The files go through FileChannels, HuffmanCodec does the decoding
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setTableLibrary(tableLibrary);
+        try {
+            new ChannelCodec(codec).decode(Paths.get(encodedFile), Paths.get(decodedFile));
+        } catch (IOException e) {
+            System.out.println("Error while reading file!");
+        }
+    }
+
+    private CallMetrics startCall(CodecMetrics.Operation operation) {
+        return metrics.isEnabled() ? new CallMetrics(operation) : null;
+    }
+
+    // Records a call that was one phase from start to end, with the sizes of the files it read and wrote
+    private void endCall(CallMetrics call, CodecMetrics.Phase phase, String inFile, String outFile) {
+        if (call == null) return;
+        call.lap(phase, call.getStartNanos());
+        call.addBytes(inFile == null ? 0 : new File(inFile).length(), outFile == null ? 0 : new File(outFile).length());
+        metrics.record(call.finish());
+    }
+
+    // Walks the flat tree one bit at a time
+    private void decodeWithTree(BitReader in, OutputStream out) throws IOException {
+        byte [] buffer = new byte [1 << 16];
+        int decoded;
+
+        while ((decoded = tree.decode(in, buffer, 0, buffer.length)) != -1){
+            out.write(buffer, 0, decoded);
+        }
+    }
+
+    // Walks the TreeNode copy of the tree one bit at a time
+    private void decodeWithNodes(BitReader in, OutputStream out) throws IOException {
+        TreeNode root = getHuffmanRoot();
+        byte [] buffer = new byte [1 << 16];
+        int buffer_used = 0;
+        TreeNode huffman_copy = root;
+        int bit;
+
+        while ((bit = in.readBit()) != -1){
+            huffman_copy = (bit == 0) ? huffman_copy.getLeft() : huffman_copy.getRight();
+
+            Character decoded_char = huffman_copy.getData().getCharacter();
+            if (decoded_char != null){
+                buffer[buffer_used++] = (byte) decoded_char.charValue();
+                if (buffer_used == buffer.length){
+                    out.write(buffer, 0, buffer_used);
+                    buffer_used = 0;
                 }
- 
-                System.out.println(all_encoded);
+                // Start from the top again
+                huffman_copy = root;
             }
-            */
- 
         }
- 
+        out.write(buffer, 0, buffer_used);
+    }
+
+    // Looks up several bits at a time in tables built from the flat tree
+    private void decodeWithTable(BitReader in, OutputStream out) throws IOException {
+        TableDecoder table_decoder = new TableDecoder(tree);
+        byte [] buffer = new byte [1 << 16];
+        int decoded;
+
+        while ((decoded = table_decoder.decode(in, buffer, 0, buffer.length)) != -1){
+            out.write(buffer, 0, decoded);
+        }
     }
  
     /**
@@ -731,6 +762,10 @@ public class HuffmanCoding {
     }
  
     public TreeNode getHuffmanRoot() {
+        // The TreeNode tree is only made when it is asked for, from the flat one
+        if (huffmanRoot == null && tree != null){
+            huffmanRoot = tree.toTreeNode(charCounts);
+        }
         return huffmanRoot;
     }
  
@@ -0,0 +1,78 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class decodes data written by a HuffmanEncoder with the same code.
+ * It is immutable: the lookup tables are built once when the decoder is
+ * made and only read afterwards, and every call keeps its state in local
+ * variables, so one decoder can be shared by any number of threads.
+ */
+public final class HuffmanDecoder {
+    private final TableDecoder decoder;
+
+    /**
+     * @param table The code the data was encoded with
+     */
+    public HuffmanDecoder(CodeTable table) {
+        this.decoder = new TableDecoder(table.getCodes(), table.getLengths());
+    }
+
+    /**
+     * @param count The number of bytes that were encoded
+     * @return The count bytes encoded in data[offset, offset + length), in a new array
+     */
+    public byte[] decode(byte[] data, int offset, int length, int count) throws IOException {
+        byte[] out = new byte[count];
+        decode(data, offset, length, out, 0, count);
+        return out;
+    }
+
+    /**
+     * Decodes count bytes from data[offset, offset + length) into out, starting at outOffset
+     *
+     * @throws IOException If the data runs out before count bytes are decoded
+     */
+    public void decode(byte[] data, int offset, int length, byte[] out, int outOffset, int count)
+            throws IOException {
+        HuffmanEncoder.checkRange(data.length, offset, length);
+        HuffmanEncoder.checkRange(out.length, outOffset, count);
+        if (count == 0) return;
+        int decoded = decoder.decode(new BitReader(data, offset, length), out, outOffset, count);
+        if (decoded != count) throw new IOException("Encoded data is too short");
+    }
+
+    /**
+     * Decodes count bytes from the remaining bytes of src, which are taken to be
+     * all of the encoded data, into dst. Both buffers' positions are moved past
+     * the bytes read and written.
+     *
+     * @throws IOException If dst doesn't have room for count bytes, or the data
+     * runs out before count bytes are decoded, in which case neither position is moved
+     */
+    public void decode(ByteBuffer src, ByteBuffer dst, int count) throws IOException {
+        if (count > dst.remaining()) throw new IOException("Output buffer is too small");
+
+        // Direct buffers are read through, or decoded into, an array of their own
+        byte[] data;
+        int offset;
+        if (src.hasArray()) {
+            data = src.array();
+            offset = src.arrayOffset() + src.position();
+        } else {
+            data = new byte[src.remaining()];
+            src.duplicate().get(data);
+            offset = 0;
+        }
+        if (dst.hasArray()) {
+            decode(data, offset, src.remaining(), dst.array(), dst.arrayOffset() + dst.position(), count);
+            dst.position(dst.position() + count);
+        } else {
+            byte[] out = new byte[count];
+            decode(data, offset, src.remaining(), out, 0, count);
+            dst.put(out);
+        }
+        src.position(src.limit());
+    }
+}
@@ -0,0 +1,172 @@
+package huffman;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class encodes bytes with one fixed code. It is immutable: the code
+ * is copied in when the encoder is made, and every call keeps its state in
+ * local variables, so one encoder can be shared by any number of threads.
+ *
+ * The output is only the codes, most significant bit first, with the last
+ * byte padded with zeroes. Whoever decodes it needs the same code and the
+ * number of bytes encoded, for example from a HuffmanDecoder made from the
+ * same CodeTable and a length sent along with the data.
+ */
+public final class HuffmanEncoder {
+    private final long[] codes;
+    private final int[] lengths;
+    private final int maxLength;
+
+    /**
+     * @param table The code to encode with
+     */
+    public HuffmanEncoder(CodeTable table) {
+        this.codes = table.getCodes();
+        this.lengths = table.getLengths();
+        int longest = 0;
+        for (int length : lengths) longest = Math.max(longest, length);
+        this.maxLength = longest;
+    }
+
+    /**
+     * @return The most bytes encoding length bytes can take
+     */
+    public long maxEncodedLength(long length) {
+        return (length * maxLength + 7) / 8;
+    }
+
+    /**
+     * @return The exact number of bytes data[offset, offset + length) encodes to
+     * @throws IllegalArgumentException If a byte has no code
+     */
+    public int encodedLength(byte[] data, int offset, int length) {
+        checkRange(data.length, offset, length);
+        long bits = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int codeLength = lengths[data[i] & 0xFF];
+            if (codeLength == 0) throw new IllegalArgumentException("Byte " + (data[i] & 0xFF) + " has no code");
+            bits += codeLength;
+        }
+        long bytes = (bits + 7) / 8;
+        if (bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("Encoded data doesn't fit in an array");
+        return (int) bytes;
+    }
+
+    public byte[] encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    /**
+     * @return data[offset, offset + length) encoded, in a new array of just the right size
+     */
+    public byte[] encode(byte[] data, int offset, int length) {
+        byte[] out = new byte[encodedLength(data, offset, length)];
+        encode(data, offset, length, out, 0);
+        return out;
+    }
+
+    /**
+     * Encodes data[offset, offset + length) into out, starting at outOffset
+     *
+     * @return The number of bytes written to out
+     * @throws IndexOutOfBoundsException If out doesn't have room, in which case nothing is written
+     * @throws IllegalArgumentException If a byte has no code
+     */
+    public int encode(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        int size = encodedLength(data, offset, length);
+        checkRange(out.length, outOffset, size);
+        return write(data, offset, length, out, outOffset);
+    }
+
+    // Writes the codes, once it is known that out has room for them
+    private int write(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        long bits = 0;
+        int bitCount = 0;
+        int position = outOffset;
+        for (int i = offset; i < offset + length; i++) {
+            int b = data[i] & 0xFF;
+            long code = codes[b];
+            int codeLength = lengths[b];
+            int free = 64 - bitCount;
+            if (codeLength < free) {
+                bits = (bits << codeLength) | code;
+                bitCount += codeLength;
+                continue;
+            }
+            // Fill up the accumulator, write it out, and keep the rest of the code
+            int rest = codeLength - free;
+            long word = free == 64 ? code : (bits << free) | (code >>> rest);
+            for (int shift = 56; shift >= 0; shift -= 8) out[position++] = (byte) (word >>> shift);
+            bits = rest == 0 ? 0 : code & (-1L >>> (64 - rest));
+            bitCount = rest;
+        }
+
+        // Left align what is left, and write it out a byte at a time
+        long word = bitCount == 0 ? 0 : bits << (64 - bitCount);
+        for (int i = 0; i < (bitCount + 7) / 8; i++) out[position++] = (byte) (word >>> (56 - 8 * i));
+        return position - outOffset;
+    }
+
+    /**
+     * Encodes the remaining bytes of src into dst, heap or direct. Both buffers'
+     * positions are moved past the bytes read and written.
+     *
+     * @throws BufferOverflowException If dst doesn't have room, in which
+     * case neither position is moved
+     */
+    public void encode(ByteBuffer src, ByteBuffer dst) {
+        if (src.hasArray() && dst.hasArray()) {
+            byte[] data = src.array();
+            int offset = src.arrayOffset() + src.position();
+            if (encodedLength(data, offset, src.remaining()) > dst.remaining()) throw new BufferOverflowException();
+            int written = write(data, offset, src.remaining(), dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.limit());
+            dst.position(dst.position() + written);
+            return;
+        }
+
+        // Works on any buffer through absolute gets and puts, without copying
+        ByteBuffer out = dst.duplicate().order(ByteOrder.BIG_ENDIAN);
+        long size = 0;
+        for (int i = src.position(); i < src.limit(); i++) {
+            int codeLength = lengths[src.get(i) & 0xFF];
+            if (codeLength == 0) throw new IllegalArgumentException("Byte " + (src.get(i) & 0xFF) + " has no code");
+            size += codeLength;
+        }
+        if ((size + 7) / 8 > dst.remaining()) throw new BufferOverflowException();
+
+        long bits = 0;
+        int bitCount = 0;
+        int position = dst.position();
+        for (int i = src.position(); i < src.limit(); i++) {
+            int b = src.get(i) & 0xFF;
+            long code = codes[b];
+            int codeLength = lengths[b];
+            int free = 64 - bitCount;
+            if (codeLength < free) {
+                bits = (bits << codeLength) | code;
+                bitCount += codeLength;
+                continue;
+            }
+            int rest = codeLength - free;
+            out.putLong(position, free == 64 ? code : (bits << free) | (code >>> rest));
+            position += 8;
+            bits = rest == 0 ? 0 : code & (-1L >>> (64 - rest));
+            bitCount = rest;
+        }
+        long word = bitCount == 0 ? 0 : bits << (64 - bitCount);
+        for (int i = 0; i < (bitCount + 7) / 8; i++) out.put(position++, (byte) (word >>> (56 - 8 * i)));
+
+        src.position(src.limit());
+        dst.position(position);
+    }
+
+    static void checkRange(int size, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > size - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length
+                    + ") is out of bounds for length " + size);
+        }
+    }
+}
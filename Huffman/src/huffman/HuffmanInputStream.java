@@ -0,0 +1,153 @@
+package huffman;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * This class decompresses a container from the underlying stream as it is
+ * read, the way GZIPInputStream does for gzip. Nothing is read until the
+ * first call to read, and then one block at a time: a read asking for at
+ * least a whole block is decoded straight into the caller's array, and
+ * otherwise the block goes into a buffer that grows to the largest block.
+ * skip passes over whole blocks without decoding them.
+ *
+ * The stream ends at the end of the container, and close closes the
+ * underlying stream and drops the buffer.
+ */
+public class HuffmanInputStream extends FilterInputStream {
+    private final TableLibrary library;
+
+    private ContainerReader reader;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+    private boolean closed;
+
+    public HuffmanInputStream(InputStream in) {
+        this(in, new HuffmanCodec());
+    }
+
+    /**
+     * @param codec The codec whose trained tables TRAINED blocks may refer to
+     */
+    public HuffmanInputStream(InputStream in, HuffmanCodec codec) {
+        super(in);
+        this.library = codec.getTableLibrary();
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if (position == limit && !fillBuffer()) return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        if (len == 0) return 0;
+        if (position == limit) {
+            if (!nextBlock()) return -1;
+            // A block that fits is decoded straight into b
+            if (reader.getOriginalSize() <= len) return reader.readBlock(b, off);
+            readBlock();
+        }
+        int copied = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, copied);
+        position += copied;
+        return copied;
+    }
+
+    /**
+     * Skips decoded bytes. Whole blocks are passed over without being decoded,
+     * so their checksums aren't checked.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        long skipped = 0;
+        while (skipped < n) {
+            if (position == limit) {
+                if (!nextBlock()) break;
+                if (reader.getOriginalSize() <= n - skipped) {
+                    skipped += reader.getOriginalSize();
+                    reader.skipBlock();
+                    continue;
+                }
+                readBlock();
+            }
+            int passed = (int) Math.min(n - skipped, limit - position);
+            position += passed;
+            skipped += passed;
+        }
+        return skipped;
+    }
+
+    /**
+     * @return The number of decoded bytes that can be read without decoding another block
+     */
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) { }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Closes the underlying stream and drops the buffer
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        buffer = null;
+        reader = null;
+        position = 0;
+        limit = 0;
+        in.close();
+    }
+
+    // Decodes the next block into the buffer, returns false at the end of the container
+    private boolean fillBuffer() throws IOException {
+        if (!nextBlock()) return false;
+        readBlock();
+        return true;
+    }
+
+    private void readBlock() throws IOException {
+        // Not the block size from the header, which could be anything
+        if (buffer == null || buffer.length < reader.getOriginalSize()) buffer = new byte[reader.getOriginalSize()];
+        limit = reader.readBlock(buffer, 0);
+        position = 0;
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (endOfStream) return false;
+        if (reader == null) reader = new ContainerReader(in, library);
+        if (!reader.nextBlock()) {
+            endOfStream = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+    }
+}
@@ -0,0 +1,153 @@
+package huffman;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * This class compresses everything written to it into the container format,
+ * one block at a time, the way GZIPOutputStream does for gzip. Bytes are
+ * gathered in a buffer of one block, which is coded and written out to the
+ * underlying stream whenever it fills up; writes of a whole block or more
+ * are coded straight from the caller's array. HuffmanInputStream, or any
+ * of HuffmanCodec's decode methods, reads the result back.
+ *
+ * finish writes the last block and the trailer without closing the
+ * underlying stream, and close does both and drops the buffer.
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+    private final HuffmanCodec codec;
+    private final ContainerWriter writer;
+    private final boolean syncFlush;
+
+    private byte[] buffer;
+    private int count;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Writes the container header to out, with blocks of
+     * ContainerFormat.DEFAULT_BLOCK_SIZE bytes
+     */
+    public HuffmanOutputStream(OutputStream out) throws IOException {
+        this(out, new HuffmanCodec());
+    }
+
+    /**
+     * Writes the container header to out
+     *
+     * @param blockSize The size of the buffer, and so the most bytes in a block
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize) throws IOException {
+        this(out, codecWithBlockSize(blockSize));
+    }
+
+    /**
+     * Writes the container header to out
+     *
+     * @param codec The codec to code blocks with, and whose block size is the size of the buffer
+     */
+    public HuffmanOutputStream(OutputStream out, HuffmanCodec codec) throws IOException {
+        this(out, codec, false);
+    }
+
+    /**
+     * Writes the container header to out
+     *
+     * @param codec The codec to code blocks with, and whose block size is the size of the buffer
+     * @param syncFlush True if flush should write what is buffered as a block of its own
+     * before flushing out, so a reader at the other end can decode everything written so
+     * far. Otherwise flush only flushes out, since small blocks compress worse.
+     */
+    public HuffmanOutputStream(OutputStream out, HuffmanCodec codec, boolean syncFlush) throws IOException {
+        super(out);
+        this.codec = codec;
+        this.syncFlush = syncFlush;
+        this.writer = new ContainerWriter(out, codec.getBlockSize());
+        this.buffer = new byte[codec.getBlockSize()];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte) b;
+        if (count == buffer.length) writeBuffer();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        while (len > 0) {
+            if (count == 0 && len >= buffer.length) {
+                // A whole block is coded straight from b
+                codec.writeBlock(writer, b, off, buffer.length);
+                off += buffer.length;
+                len -= buffer.length;
+                continue;
+            }
+            int copied = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, copied);
+            count += copied;
+            off += copied;
+            len -= copied;
+            if (count == buffer.length) writeBuffer();
+        }
+    }
+
+    /**
+     * Flushes the underlying stream, after writing out what is buffered if
+     * the stream was made with syncFlush
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (syncFlush && count > 0) writeBuffer();
+        out.flush();
+    }
+
+    /**
+     * Writes the last block and the trailer, without closing the underlying
+     * stream. Nothing more can be written afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        ensureOpen();
+        if (count > 0) writeBuffer();
+        writer.finish();
+        finished = true;
+        buffer = null;
+    }
+
+    /**
+     * Finishes the container, closes the underlying stream, and drops the buffer
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            finish();
+        } finally {
+            closed = true;
+            buffer = null;
+            out.close();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        codec.writeBlock(writer, buffer, 0, count);
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (finished) throw new IOException("Stream finished");
+    }
+
+    private static HuffmanCodec codecWithBlockSize(int blockSize) {
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(blockSize);
+        return codec;
+    }
+}
@@ -0,0 +1,114 @@
+package huffman;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This class turns every recorded call into a huffman.Call Flight Recorder
+ * event, so codec work shows up in a JFR recording next to GC pauses and
+ * I/O. Events are only built while a recording has them enabled, for
+ * example with -XX:StartFlightRecording or jcmd JFR.start. Every call is
+ * also passed on to another CodecMetrics, such as a MetricsRecorder, so
+ * the two can be used together.
+ */
+public class JfrMetrics implements CodecMetrics {
+    private final CodecMetrics next;
+
+    public JfrMetrics() {
+        this(CodecMetrics.NONE);
+    }
+
+    /**
+     * @param next Where every call is passed on to after its event is committed
+     */
+    public JfrMetrics(CodecMetrics next) {
+        this.next = next;
+    }
+
+    @Override
+    public void record(CallMetrics call) {
+        CallEvent event = new CallEvent();
+        if (event.isEnabled()) {
+            event.operation = call.getOperation().toString();
+            event.wallTime = call.getWallNanos();
+            event.histogramTime = call.getPhaseNanos(Phase.HISTOGRAM);
+            event.treeBuildTime = call.getPhaseNanos(Phase.TREE_BUILD);
+            event.codeAssignmentTime = call.getPhaseNanos(Phase.CODE_ASSIGNMENT);
+            event.encodeTime = call.getPhaseNanos(Phase.ENCODE);
+            event.decodeTime = call.getPhaseNanos(Phase.DECODE);
+            event.bytesIn = call.getBytesIn();
+            event.bytesOut = call.getBytesOut();
+            event.compressionRatio = call.getCompressionRatio();
+            event.symbolsPerSecond = call.getSymbolsPerSecond();
+            event.cacheHits = call.getCacheHits();
+            event.cacheMisses = call.getCacheMisses();
+            event.allocated = call.getAllocatedBytes();
+            event.commit();
+        }
+        if (next.isEnabled()) next.record(call);
+    }
+
+    @Name("huffman.Call")
+    @Label("Huffman Codec Call")
+    @Category("Huffman")
+    @Description("One encode or decode call, or one step of building a code")
+    @StackTrace(false)
+    static class CallEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long wallTime;
+
+        @Label("Histogram")
+        @Timespan(Timespan.NANOSECONDS)
+        long histogramTime;
+
+        @Label("Tree Build")
+        @Timespan(Timespan.NANOSECONDS)
+        long treeBuildTime;
+
+        @Label("Code Assignment")
+        @Timespan(Timespan.NANOSECONDS)
+        long codeAssignmentTime;
+
+        @Label("Encode")
+        @Timespan(Timespan.NANOSECONDS)
+        long encodeTime;
+
+        @Label("Decode")
+        @Timespan(Timespan.NANOSECONDS)
+        long decodeTime;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Compression Ratio")
+        double compressionRatio;
+
+        @Label("Symbols per Second")
+        double symbolsPerSecond;
+
+        @Label("Cache Hits")
+        int cacheHits;
+
+        @Label("Cache Misses")
+        int cacheMisses;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+}
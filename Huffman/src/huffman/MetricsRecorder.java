@@ -0,0 +1,82 @@
+package huffman;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class adds up the calls recorded by any number of codecs and
+ * threads, and hands out the totals as MetricsSnapshots. Recording a call
+ * only adds to a few LongAdders, so threads don't wait on each other.
+ *
+ * A snapshot taken while calls are being recorded may include part of a
+ * call, such as its bytes but not its time yet.
+ */
+public class MetricsRecorder implements CodecMetrics {
+    private static final int OPERATIONS = Operation.values().length;
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LongAdder[] calls = adders(OPERATIONS);
+    private final LongAdder[] wallNanos = adders(OPERATIONS);
+    private final LongAdder[] phaseNanos = adders(PHASES.length);
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder originalBytes = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    @Override
+    public void record(CallMetrics call) {
+        int operation = call.getOperation().ordinal();
+        calls[operation].increment();
+        wallNanos[operation].add(call.getWallNanos());
+        for (Phase phase : PHASES) {
+            long nanos = call.getPhaseNanos(phase);
+            if (nanos != 0) phaseNanos[phase.ordinal()].add(nanos);
+        }
+        bytesIn.add(call.getBytesIn());
+        bytesOut.add(call.getBytesOut());
+        originalBytes.add(call.getOriginalBytes());
+        encodedBytes.add(call.getEncodedBytes());
+        cacheHits.add(call.getCacheHits());
+        cacheMisses.add(call.getCacheMisses());
+        if (call.getAllocatedBytes() > 0) allocatedBytes.add(call.getAllocatedBytes());
+    }
+
+    /**
+     * @return The totals of every call recorded since this was made or last reset
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(sums(calls), sums(wallNanos), sums(phaseNanos),
+                bytesIn.sum(), bytesOut.sum(), originalBytes.sum(), encodedBytes.sum(),
+                cacheHits.sum(), cacheMisses.sum(), allocatedBytes.sum());
+    }
+
+    /**
+     * Sets every total back to 0
+     */
+    public void reset() {
+        for (LongAdder adder : calls) adder.reset();
+        for (LongAdder adder : wallNanos) adder.reset();
+        for (LongAdder adder : phaseNanos) adder.reset();
+        bytesIn.reset();
+        bytesOut.reset();
+        originalBytes.reset();
+        encodedBytes.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        allocatedBytes.reset();
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) sums[i] = adders[i].sum();
+        return sums;
+    }
+}
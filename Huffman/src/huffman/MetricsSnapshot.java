@@ -0,0 +1,150 @@
+package huffman;
+
+/**
+ * This class holds the totals of a MetricsRecorder at one point in time.
+ * It never changes, so it can be kept, compared with a later snapshot
+ * through since, or handed to another thread for export.
+ */
+public final class MetricsSnapshot {
+    private static final CodecMetrics.Operation[] OPERATIONS = CodecMetrics.Operation.values();
+    private static final CodecMetrics.Phase[] PHASES = CodecMetrics.Phase.values();
+
+    private final long[] calls;
+    private final long[] wallNanos;
+    private final long[] phaseNanos;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long originalBytes;
+    private final long encodedBytes;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long allocatedBytes;
+
+    MetricsSnapshot(long[] calls, long[] wallNanos, long[] phaseNanos, long bytesIn, long bytesOut,
+                    long originalBytes, long encodedBytes, long cacheHits, long cacheMisses, long allocatedBytes) {
+        this.calls = calls;
+        this.wallNanos = wallNanos;
+        this.phaseNanos = phaseNanos;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.originalBytes = originalBytes;
+        this.encodedBytes = encodedBytes;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return The number of calls of the given kind
+     */
+    public long getCalls(CodecMetrics.Operation operation) {
+        return calls[operation.ordinal()];
+    }
+
+    /**
+     * @return The wall time of all calls of the given kind, in nanoseconds
+     */
+    public long getWallNanos(CodecMetrics.Operation operation) {
+        return wallNanos[operation.ordinal()];
+    }
+
+    /**
+     * @return The time spent in phase over all calls, in nanoseconds
+     */
+    public long getPhaseNanos(CodecMetrics.Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * @return The original bytes encoded and decoded
+     */
+    public long getOriginalBytes() {
+        return originalBytes;
+    }
+
+    /**
+     * @return The encoded bytes written and read
+     */
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    /**
+     * @return Original bytes per encoded byte over all encode and decode calls
+     */
+    public double getCompressionRatio() {
+        return CallMetrics.ratio(originalBytes, encodedBytes);
+    }
+
+    /**
+     * @return Original bytes coded per second of encode and decode wall time
+     */
+    public double getSymbolsPerSecond() {
+        long nanos = getWallNanos(CodecMetrics.Operation.ENCODE) + getWallNanos(CodecMetrics.Operation.DECODE);
+        return CallMetrics.perSecond(originalBytes, nanos);
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * @return The share of cache lookups that were hits, 0 if there were none
+     */
+    public double getCacheHitRate() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double) cacheHits / lookups;
+    }
+
+    /**
+     * @return The bytes the calling threads allocated, where the JVM counts them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return What was recorded between earlier and this snapshot
+     */
+    public MetricsSnapshot since(MetricsSnapshot earlier) {
+        return new MetricsSnapshot(minus(calls, earlier.calls), minus(wallNanos, earlier.wallNanos),
+                minus(phaseNanos, earlier.phaseNanos), bytesIn - earlier.bytesIn, bytesOut - earlier.bytesOut,
+                originalBytes - earlier.originalBytes, encodedBytes - earlier.encodedBytes,
+                cacheHits - earlier.cacheHits, cacheMisses - earlier.cacheMisses,
+                allocatedBytes - earlier.allocatedBytes);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (CodecMetrics.Operation operation : OPERATIONS) {
+            s.append(operation).append(' ').append(getCalls(operation)).append(" calls ")
+                    .append(getWallNanos(operation) / 1_000_000).append(" ms, ");
+        }
+        for (CodecMetrics.Phase phase : PHASES) {
+            s.append(phase).append(' ').append(getPhaseNanos(phase) / 1_000_000).append(" ms, ");
+        }
+        return s.append(bytesIn).append(" bytes in, ").append(bytesOut).append(" bytes out, ")
+                .append(String.format("ratio %.3f, %.1f MB/s, ", getCompressionRatio(), getSymbolsPerSecond() / 1e6))
+                .append(cacheHits).append(" cache hits, ").append(cacheMisses).append(" misses, ")
+                .append(allocatedBytes).append(" bytes allocated").toString();
+    }
+
+    private static long[] minus(long[] a, long[] b) {
+        long[] difference = new long[a.length];
+        for (int i = 0; i < a.length; i++) difference[i] = a[i] - b[i];
+        return difference;
+    }
+}
@@ -0,0 +1,103 @@
+package huffman;
+
+import java.util.Arrays;
+
+/**
+ * This class finds optimal code lengths that are no longer than a given
+ * maximum, using the package-merge algorithm. Short maximum lengths keep
+ * lookup tables small and let every code fit in a machine word, at the
+ * cost of slightly longer output on very skewed inputs.
+ */
+public class PackageMerge {
+    // Don't instantiate
+    private PackageMerge() { }
+
+    /**
+     * Finds the code lengths which minimize the total encoded size of the counts,
+     * without any code being longer than maxLength
+     *
+     * @param counts The count of every symbol, symbols with count 0 get no code
+     * @param maxLength The longest code allowed
+     * @return The code length of every symbol, 0 for symbols with count 0
+     */
+    public static int[] codeLengths(long[] counts, int maxLength) {
+        int[] lengths = new int[counts.length];
+
+        // Leaves sorted by count, and by symbol for equal counts
+        Integer[] order = new Integer[counts.length];
+        int n = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] > 0) order[n++] = s;
+        }
+        if (n == 0) return lengths;
+        if (n == 1) {
+            lengths[order[0]] = 1;
+            return lengths;
+        }
+        if (maxLength < 1 || maxLength > 62 || (1L << maxLength) < n) {
+            throw new IllegalArgumentException(n + " symbols don't fit in codes of " + maxLength + " bits");
+        }
+        Arrays.sort(order, 0, n, (a, b) -> counts[a] != counts[b] ? Long.compare(counts[a], counts[b]) : a - b);
+
+        int[] leaves = new int[n];
+        long[] leafWeights = new long[n];
+        for (int i = 0; i < n; i++) {
+            leaves[i] = order[i];
+            leafWeights[i] = counts[order[i]];
+        }
+
+        // Every level is a list of items sorted by weight. An item is either a leaf
+        // (symbol >= 0), or a package of two neighbouring items from the level before
+        // (symbol == -1, first of the two at child).
+        long[][] weights = new long[maxLength][];
+        int[][] symbols = new int[maxLength][];
+        int[][] children = new int[maxLength][];
+
+        weights[0] = leafWeights;
+        symbols[0] = leaves;
+        children[0] = new int[n];
+
+        for (int level = 1; level < maxLength; level++) {
+            long[] previous = weights[level - 1];
+            int packages = previous.length / 2;
+            int size = n + packages;
+            weights[level] = new long[size];
+            symbols[level] = new int[size];
+            children[level] = new int[size];
+
+            // Merge the leaves with the packages, leaves first on equal weights
+            int leaf = 0, pack = 0;
+            for (int i = 0; i < size; i++) {
+                long packWeight = pack < packages ? previous[2 * pack] + previous[2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < n && leafWeights[leaf] <= packWeight) {
+                    weights[level][i] = leafWeights[leaf];
+                    symbols[level][i] = leaves[leaf];
+                    leaf++;
+                } else {
+                    weights[level][i] = packWeight;
+                    symbols[level][i] = -1;
+                    children[level][i] = 2 * pack;
+                    pack++;
+                }
+            }
+        }
+
+        // The cheapest 2n - 2 items of the last level make up the code. Every
+        // time a leaf shows up in them, directly or inside packages, its code
+        // gets one bit longer.
+        for (int i = 0; i < 2 * n - 2; i++) {
+            count(maxLength - 1, i, symbols, children, lengths);
+        }
+        return lengths;
+    }
+
+    private static void count(int level, int index, int[][] symbols, int[][] children, int[] lengths) {
+        int symbol = symbols[level][index];
+        if (symbol >= 0) {
+            lengths[symbol]++;
+            return;
+        }
+        count(level - 1, children[level][index], symbols, children, lengths);
+        count(level - 1, children[level][index] + 1, symbols, children, lengths);
+    }
+}
@@ -0,0 +1,199 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * This class decodes an indexed container on several threads. The index
+ * at the end of the file gives the offset and original size of every
+ * block, so each block can be read, decoded and written straight to its
+ * place in the output file without looking at any other block.
+ */
+public class ParallelDecoder implements Closeable {
+    private final ExecutorService pool;
+    private final TableLibrary library;
+
+    /**
+     * @param threads The number of worker threads
+     */
+    public ParallelDecoder(int threads) {
+        this(threads, new TableLibrary());
+    }
+
+    /**
+     * @param threads The number of worker threads
+     * @param library The tables TRAINED blocks may refer to
+     */
+    public ParallelDecoder(int threads, TableLibrary library) {
+        this.library = library;
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "huffman-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Decodes the indexed container in encodedFile into decodedFile
+     *
+     * @throws IOException If the container has no index, or is corrupt
+     */
+    public void decode(Path encodedFile, Path decodedFile) throws IOException {
+        try (FileChannel in = FileChannel.open(encodedFile, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(decodedFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = read(in, 0, ContainerFormat.HEADER_SIZE);
+            if (header.getInt() != ContainerFormat.MAGIC) throw new IOException("Not a huffman container");
+            if ((header.get() & 0xFF) != ContainerFormat.VERSION) throw new IOException("Unsupported container version");
+            if ((header.get() & ContainerFormat.INDEXED) == 0) throw new IOException("Container has no block index");
+            int blockSize = header.getInt();
+            if (blockSize < 1) throw new IOException("Corrupt container header");
+
+            long footerOffset = in.size() - ContainerFormat.FOOTER_SIZE;
+            if (footerOffset < ContainerFormat.HEADER_SIZE) throw new EOFException("Container is cut short");
+            ByteBuffer footer = read(in, footerOffset, ContainerFormat.FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            if (footer.getInt() != ContainerFormat.INDEX_MAGIC) throw new IOException("Corrupt container footer");
+
+            // Nothing in the index is used before it is checked against the size of the file
+            if (indexOffset < ContainerFormat.HEADER_SIZE || indexOffset > footerOffset - 4) {
+                throw new IOException("Corrupt container index");
+            }
+            // The index runs right up to the footer, which also catches an offset into the middle of it
+            int blockCount = read(in, indexOffset, 4).getInt();
+            if (blockCount < 0 || indexOffset + 4 + 12L * blockCount != footerOffset) {
+                throw new IOException("Corrupt container index");
+            }
+            ByteBuffer index = read(in, indexOffset + 4, 12 * blockCount);
+
+            // Work out where every block goes in the output. The blocks have to follow each other
+            // from the header to the end marker with no gaps, and the trailer has to agree with
+            // the index, all before anything is written.
+            long[] blockOffsets = new long[blockCount];
+            int[] originalSizes = new int[blockCount];
+            ByteBuffer[] blockHeaders = new ByteBuffer[blockCount];
+            long blockEnd = ContainerFormat.HEADER_SIZE;
+            long totalLength = 0;
+            for (int i = 0; i < blockCount; i++) {
+                blockOffsets[i] = index.getLong();
+                originalSizes[i] = index.getInt();
+                if (originalSizes[i] < 1 || originalSizes[i] > blockSize || blockOffsets[i] != blockEnd
+                        || blockOffsets[i] > indexOffset - ContainerFormat.BLOCK_HEADER_SIZE) {
+                    throw new IOException("Corrupt container index");
+                }
+                blockHeaders[i] = read(in, blockOffsets[i], ContainerFormat.BLOCK_HEADER_SIZE);
+                int type = blockHeaders[i].get(0) & 0xFF;
+                if (!ContainerReader.isBlockType(type)) throw new IOException("Unknown block type " + type);
+                if (blockHeaders[i].getInt(1) != originalSizes[i]) {
+                    throw new IOException("Block doesn't match the container index");
+                }
+                int payloadSize = blockHeaders[i].getInt(5);
+                // The same bound as ContainerReader's
+                if (payloadSize < 0 || payloadSize > 8L * blockSize + 256) throw new IOException("Corrupt block header");
+                blockEnd += ContainerFormat.BLOCK_HEADER_SIZE + payloadSize;
+                totalLength += originalSizes[i];
+            }
+            if (blockEnd != indexOffset - ContainerFormat.TRAILER_SIZE) throw new IOException("Corrupt container index");
+            ByteBuffer trailer = read(in, blockEnd, ContainerFormat.TRAILER_SIZE);
+            if ((trailer.get() & 0xFF) != ContainerFormat.END) throw new IOException("Corrupt container index");
+            if (trailer.getLong() != totalLength || trailer.getInt() != blockCount) {
+                throw new IOException("Container trailer doesn't match its index");
+            }
+            if (totalLength > 0) out.write(ByteBuffer.allocate(1), totalLength - 1);
+
+            List<Future<Void>> results = new ArrayList<>(blockCount);
+            long target = 0;
+            for (int i = 0; i < blockCount; i++) {
+                long blockOffset = blockOffsets[i];
+                int originalSize = originalSizes[i];
+                ByteBuffer blockHeader = blockHeaders[i];
+                long blockTarget = target;
+                results.add(pool.submit(() -> {
+                    decodeBlock(in, blockOffset, blockHeader, originalSize, out, blockTarget);
+                    return null;
+                }));
+                target += originalSize;
+            }
+
+            try {
+                for (Future<Void> result : results) await(result);
+            } finally {
+                for (Future<Void> result : results) result.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    // Reads the payload of the block at blockOffset, whose header has already been read and
+    // checked against the index, and writes its original bytes to out at target
+    private void decodeBlock(FileChannel in, long blockOffset, ByteBuffer header, int originalSize,
+                             FileChannel out, long target) throws IOException {
+        int type = header.get(0) & 0xFF;
+        int payloadSize = header.getInt(5);
+        int checksum = header.getInt(9);
+
+        ByteBuffer payload = read(in, blockOffset + ContainerFormat.BLOCK_HEADER_SIZE, payloadSize);
+        ByteBuffer source;
+        if (type == ContainerFormat.STORED) {
+            // The payload is the original bytes, written out as they are once their checksum is checked
+            if (payloadSize != originalSize) throw new IOException("Corrupt block header");
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, payloadSize);
+            if ((int) crc.getValue() != checksum) throw new IOException("Block checksum doesn't match");
+            source = payload;
+        } else {
+            byte[] decoded = new byte[originalSize];
+            ContainerReader.decodePayload(type, library, payload.array(), 0, payloadSize, decoded, 0, originalSize, checksum, new CRC32(), null);
+            source = ByteBuffer.wrap(decoded);
+        }
+        while (source.hasRemaining()) {
+            out.write(source, target + source.position());
+        }
+    }
+
+    // Reads length bytes starting at position into a new buffer, ready to be read from
+    private static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+        if (position < 0 || length < 0) throw new IOException("Corrupt container");
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) throw new EOFException("Container is cut short");
+        }
+        return buffer.flip();
+    }
+
+    private static void await(Future<Void> result) throws IOException {
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+}
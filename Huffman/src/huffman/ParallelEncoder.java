@@ -0,0 +1,171 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class compresses a stream into the container format on several
+ * threads. The input is split into fixed size blocks, and every block is
+ * counted, given its own code and encoded on a worker thread. Encoded
+ * blocks are written in input order, so the output is the same whatever
+ * the number of threads. Only a few blocks per thread are in memory at once.
+ * Given a trained table, every block is coded with it instead. Blocks that
+ * coding wouldn't make enough smaller are stored as they are.
+ */
+public class ParallelEncoder implements Closeable {
+    private final ExecutorService pool;
+    private final int threads;
+    private final int blockSize;
+    private final boolean indexed;
+    private final TrainedTable trained;
+    private CodeTableCache cache;
+    private double minSaving = EncodedBlock.DEFAULT_MIN_SAVING;
+
+    // Block buffers no longer in use, kept to avoid allocating one per block
+    private final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+
+    // A block that has been handed to the pool, and the buffer it was read into
+    private static class Pending {
+        final Future<EncodedBlock> result;
+        final byte[] buffer;
+
+        Pending(Future<EncodedBlock> result, byte[] buffer) {
+            this.result = result;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * @param threads The number of worker threads
+     * @param blockSize The number of original bytes in each block
+     */
+    public ParallelEncoder(int threads, int blockSize) {
+        this(threads, blockSize, false);
+    }
+
+    /**
+     * @param threads The number of worker threads
+     * @param blockSize The number of original bytes in each block
+     * @param indexed True to end the container with an index of its blocks,
+     * which ParallelDecoder needs
+     */
+    public ParallelEncoder(int threads, int blockSize, boolean indexed) {
+        this(threads, blockSize, indexed, null);
+    }
+
+    /**
+     * @param threads The number of worker threads
+     * @param blockSize The number of original bytes in each block
+     * @param indexed True to end the container with an index of its blocks,
+     * which ParallelDecoder needs
+     * @param trained The table to code every block with, or null to give every
+     * block a code from its own counts
+     */
+    public ParallelEncoder(int threads, int blockSize, boolean indexed, TrainedTable trained) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        if (blockSize < 1) throw new IllegalArgumentException("blockSize must be at least 1");
+        this.threads = threads;
+        this.blockSize = blockSize;
+        this.indexed = indexed;
+        this.trained = trained;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "huffman-encoder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Sets a cache for blocks to take their codes from, so that blocks with
+     * nearly the same counts as earlier ones don't each build a tree
+     *
+     * @param cache The cache, which may be shared with other encoders, or null for none
+     */
+    public void setCodeTableCache(CodeTableCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets how much smaller than a block its coded form has to be for the block
+     * to be coded instead of stored, as HuffmanCodec.setMinimumSaving does
+     *
+     * @param fraction The least share of a block's size coding has to save, from 0 to 1,
+     * 0.02 by default
+     */
+    public void setMinimumSaving(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) throw new IllegalArgumentException("fraction must be between 0 and 1");
+        minSaving = fraction;
+    }
+
+    /**
+     * Compresses everything left in in, and writes it to out as a complete container.
+     * Neither stream is closed.
+     */
+    public void encode(InputStream in, OutputStream out) throws IOException {
+        ContainerWriter writer = new ContainerWriter(out, blockSize, indexed);
+        ArrayDeque<Pending> pending = new ArrayDeque<>();
+        CodeTableCache cache = this.cache;
+        double minSaving = this.minSaving;
+        boolean more = true;
+
+        try {
+            while (more || !pending.isEmpty()) {
+                // Keep every thread busy, with a block queued up behind it
+                while (more && pending.size() < 2 * threads) {
+                    byte[] buffer = freeBuffers.isEmpty() ? new byte[blockSize] : freeBuffers.pop();
+                    int read = in.readNBytes(buffer, 0, blockSize);
+                    if (read == 0) {
+                        freeBuffers.push(buffer);
+                        more = false;
+                        break;
+                    }
+                    pending.add(new Pending(pool.submit(() -> encodeBlock(buffer, read, cache, minSaving)), buffer));
+                }
+
+                if (!pending.isEmpty()) {
+                    Pending next = pending.remove();
+                    writer.writeBlock(await(next.result));
+                    freeBuffers.push(next.buffer);
+                }
+            }
+        } finally {
+            for (Pending p : pending) p.result.cancel(true);
+        }
+        writer.finish();
+    }
+
+    private EncodedBlock encodeBlock(byte[] buffer, int length, CodeTableCache cache, double minSaving) {
+        if (trained != null) return EncodedBlock.encode(buffer, 0, length, trained, minSaving, null);
+        return EncodedBlock.encode(buffer, 0, length, cache, minSaving, null);
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static EncodedBlock await(Future<EncodedBlock> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class decodes huffman codes with lookup tables instead of walking
+ * the tree one bit at a time. The decoder peeks at the next ROOT_BITS bits
+ * and finds the symbol and its code length with one array access. Codes
+ * longer than ROOT_BITS continue into a second-level table (and further
+ * levels for very long codes) reached through a link entry.
+ */
+public class TableDecoder {
+    // Number of bits looked at by the first-level table
+    public static final int ROOT_BITS = 10;
+
+    // A table entry is either a leaf, (symbol << 8) | code length,
+    // or a link to the next level, LINK | (offset << 5) | bits of that table
+    private static final int LINK = 1 << 31;
+
+    private int[] table;
+    private final int root;
+    private int used;
+
+    /**
+     * Builds the tables for the paths of tree, 0 going left, so they decode what
+     * walking the tree would
+     */
+    public TableDecoder(FlatTree tree) {
+        this(tree.codes(Histogram.SYMBOLS), tree.codeLengths(Histogram.SYMBOLS));
+    }
+
+    /**
+     * Builds the tables for the given code
+     *
+     * @param codes The code of every symbol, in the lowest bits
+     * @param lengths The code length of every symbol, 0 for symbols not in the code.
+     * With none above 0 the decoder decodes nothing, and rejects any bits.
+     */
+    public TableDecoder(long[] codes, int[] lengths) {
+        List<Integer> symbols = new ArrayList<>();
+        int size = 0;
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] > 0) {
+                symbols.add(s);
+                size += 1 << Math.min(ROOT_BITS, lengths[s]);
+            }
+        }
+        // Enough room for all of the levels of a complete code, grown if needed
+        table = new int[size + (1 << ROOT_BITS)];
+        root = build(symbols, codes, lengths, 0);
+    }
+
+    /**
+     * Decodes symbols from in into out, until out is full or there are no bits left
+     *
+     * @return The number of symbols decoded, -1 if there were no bits left at all
+     * @throws IOException If the bits aren't the start of any code, the same as
+     * FlatTree, which for an empty code is any bits at all
+     */
+    public int decode(BitReader in, byte[] out, int offset, int length) throws IOException {
+        int[] table = this.table;
+        int count = 0;
+
+        while (count < length) {
+            int entry = root;
+            int available = in.available();
+            if (available == 0) return count == 0 ? -1 : count;
+
+            // Follow links until reaching a leaf
+            while (true) {
+                int bits = entry & 31;
+                int next = table[((entry >>> 5) & 0x3FFFFFF) + (int) in.peek(bits)];
+                if (next == 0) {
+                    // No code starts with these bits, unless some of them are past the end
+                    if (bits > available) return count == 0 ? -1 : count;
+                    throw new IOException("The bits aren't a code of the tree");
+                }
+                if (next >= 0) {
+                    entry = next;
+                    break;
+                }
+                if (bits > available) return count == 0 ? -1 : count;
+                in.skip(bits);
+                available -= bits;
+                entry = next;
+            }
+
+            int codeLength = entry & 0xFF;
+            if (codeLength > available) return count == 0 ? -1 : count;
+            in.skip(codeLength);
+            out[offset + count++] = (byte) (entry >>> 8);
+        }
+        return count;
+    }
+
+    // Fills a table for the symbols whose first consumed bits have already been used,
+    // and returns the link entry pointing at it
+    private int build(List<Integer> symbols, long[] codes, int[] lengths, int consumed) {
+        int maxRemaining = 0;
+        for (int s : symbols) maxRemaining = Math.max(maxRemaining, lengths[s] - consumed);
+        int bits = Math.min(ROOT_BITS, maxRemaining);
+        int offset = used;
+        used += 1 << bits;
+        if (used > table.length) table = Arrays.copyOf(table, Math.max(used, 2 * table.length));
+
+        List<List<Integer>> longer = new ArrayList<>();
+        for (int i = 0; i < 1 << bits; i++) longer.add(null);
+
+        for (int s : symbols) {
+            int remaining = lengths[s] - consumed;
+            long code = codes[s] & (-1L >>> (64 - remaining));
+            if (remaining <= bits) {
+                // Every index starting with this code decodes to this symbol
+                int first = (int) (code << (bits - remaining));
+                int count = 1 << (bits - remaining);
+                for (int i = first; i < first + count; i++) {
+                    table[offset + i] = (s << 8) | remaining;
+                }
+            } else {
+                int prefix = (int) (code >>> (remaining - bits));
+                if (longer.get(prefix) == null) longer.set(prefix, new ArrayList<>());
+                longer.get(prefix).add(s);
+            }
+        }
+
+        for (int prefix = 0; prefix < longer.size(); prefix++) {
+            if (longer.get(prefix) != null) {
+                int link = build(longer.get(prefix), codes, lengths, consumed + bits);
+                table[offset + prefix] = link;
+            }
+        }
+        return LINK | (offset << 5) | bits;
+    }
+}
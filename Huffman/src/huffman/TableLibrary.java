@@ -0,0 +1,69 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps the trained tables that encoded data may refer to by
+ * ID. A library is usually filled once at startup, for example from a
+ * directory of saved tables, and can then be shared by any number of
+ * threads.
+ */
+public class TableLibrary {
+    // File name ending of saved tables picked up by loadDirectory
+    public static final String EXTENSION = ".huft";
+
+    private final ConcurrentHashMap<Integer, TrainedTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a table to the library. Adding the same code again under the same ID does nothing.
+     *
+     * @throws IllegalArgumentException If a different code already has the table's ID
+     */
+    public void register(TrainedTable table) {
+        TrainedTable existing = tables.putIfAbsent(table.getId(), table);
+        if (existing != null && !existing.sameCode(table)) {
+            throw new IllegalArgumentException("Code table " + table.getId() + " is already registered");
+        }
+    }
+
+    /**
+     * Loads and registers every saved table in dir whose name ends in EXTENSION
+     *
+     * @return The number of tables loaded
+     */
+    public int loadDirectory(Path dir) throws IOException {
+        int loaded = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path file : files) {
+                register(TrainedTable.load(file));
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @return The table with the given ID, null if there is none
+     */
+    public TrainedTable get(int id) {
+        return tables.get(id);
+    }
+
+    /**
+     * @return The table with the given ID
+     * @throws IOException If there is none, since the data referring to it can't be decoded
+     */
+    TrainedTable require(int id) throws IOException {
+        TrainedTable table = tables.get(id);
+        if (table == null) throw new IOException("Unknown code table " + id);
+        return table;
+    }
+
+    public int size() {
+        return tables.size();
+    }
+}
@@ -0,0 +1,145 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * This class is a code trained ahead of time on sample data, and known by
+ * an ID. Data of the same kind can then be encoded without counting it
+ * first, and encoded data only needs to carry the ID instead of the code.
+ *
+ * Every byte value gets a code, even ones that never showed up in the
+ * samples, so any data can be encoded with any trained table. Codes are
+ * kept short, DEFAULT_MAX_LENGTH bits at most unless asked otherwise, which
+ * keeps the decoding tables small.
+ *
+ * A saved table is the magic "HUFT" (4 bytes), the ID (4 bytes), and then
+ * the code lengths as written by CodeTable.write.
+ */
+public final class TrainedTable {
+    public static final int MAGIC = 0x48554654; // "HUFT"
+
+    // Longest code a trained table gives out by default
+    public static final int DEFAULT_MAX_LENGTH = 15;
+
+    private final int id;
+    private final CodeTable table;
+
+    // Built once, since a trained table is used over and over
+    private final TableDecoder decoder;
+
+    private TrainedTable(int id, CodeTable table) {
+        this.id = id;
+        this.table = table;
+        this.decoder = new TableDecoder(table.getCodes(), table.getLengths());
+    }
+
+    /**
+     * Trains a table on the given counts, with codes of at most DEFAULT_MAX_LENGTH bits
+     *
+     * @param id The ID the table is known by
+     * @param counts The count of every byte value in the samples
+     */
+    public static TrainedTable train(int id, long[] counts) {
+        return train(id, counts, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Trains a table on the given counts. Every count is raised by one first,
+     * so that byte values missing from the samples still get a (long) code.
+     *
+     * @param id The ID the table is known by
+     * @param counts The count of every byte value in the samples
+     * @param maxLength The longest code allowed, at least 8 so all 256 byte values fit
+     */
+    public static TrainedTable train(int id, long[] counts, int maxLength) {
+        if (counts.length > Histogram.SYMBOLS) {
+            throw new IllegalArgumentException("At most " + Histogram.SYMBOLS + " symbols are supported");
+        }
+        long[] smoothed = new long[Histogram.SYMBOLS];
+        for (int s = 0; s < smoothed.length; s++) {
+            smoothed[s] = (s < counts.length ? counts[s] : 0) + 1;
+        }
+        return new TrainedTable(id, CodeTable.fromLengths(PackageMerge.codeLengths(smoothed, maxLength)));
+    }
+
+    /**
+     * Trains a table on the bytes of the given sample files
+     *
+     * @param id The ID the table is known by
+     * @param sampleFiles Files of the kind of data the table will be used for
+     */
+    public static TrainedTable train(int id, Path... sampleFiles) throws IOException {
+        long[] counts = new long[Histogram.SYMBOLS];
+        for (Path sample : sampleFiles) {
+            try (InputStream in = Files.newInputStream(sample)) {
+                Histogram.count(in, counts);
+            }
+        }
+        return train(id, counts);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public CodeTable getCodeTable() {
+        return table;
+    }
+
+    TableDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * @return True if other has the same code lengths, whatever its ID
+     */
+    public boolean sameCode(TrainedTable other) {
+        return Arrays.equals(table.getLengths(), other.table.getLengths());
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(id);
+        table.write(out);
+    }
+
+    /**
+     * Reads a table written by write
+     *
+     * @throws IOException If the data isn't a trained table, or doesn't give every byte value a code
+     */
+    public static TrainedTable read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a trained code table");
+        int id = in.readInt();
+        CodeTable table = CodeTable.read(in);
+        for (int length : table.getLengths()) {
+            if (length == 0) throw new IOException("Trained code table doesn't cover every byte");
+        }
+        return new TrainedTable(id, table);
+    }
+
+    public void save(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            write(data);
+            data.flush();
+        }
+    }
+
+    public static TrainedTable load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(new DataInputStream(new BufferedInputStream(in)));
+        }
+    }
+}
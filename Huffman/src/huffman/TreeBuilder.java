@@ -0,0 +1,161 @@
+package huffman;
+
+import java.util.Arrays;
+
+/**
+ * This class builds a huffman coding tree from exact integer counts, using
+ * the two-queue linear merge. The leaves, sorted by count, form the first
+ * queue, and merged nodes form the second; since merged nodes are made in
+ * order of weight, the two smallest nodes are always at the front of the
+ * queues. The whole tree lives in a few primitive arrays: nodes 0 to n - 1
+ * are the leaves in sorted order, and nodes n to 2n - 2 are the merged
+ * nodes in the order they were made, the last one being the root.
+ */
+public class TreeBuilder {
+    private final int leafCount;
+    private final int[] symbols;
+    private final long[] weights;
+
+    // The children of merged node i are at 2 * (i - leafCount) and the index after it
+    private final int[] children;
+
+    private TreeBuilder(int[] symbols, long[] leafWeights, int leafCount) {
+        this.leafCount = leafCount;
+        this.symbols = symbols;
+        this.weights = Arrays.copyOf(leafWeights, Math.max(0, 2 * leafCount - 1));
+        this.children = new int[Math.max(0, 2 * (leafCount - 1))];
+
+        int nextLeaf = 0;
+        int nextMerged = leafCount;
+        for (int node = leafCount; node < weights.length; node++) {
+            for (int child = 0; child < 2; child++) {
+                // Take the smaller front of the two queues, the leaf on equal weights
+                int smallest;
+                if (nextLeaf < leafCount && (nextMerged == node || weights[nextLeaf] <= weights[nextMerged])) {
+                    smallest = nextLeaf++;
+                } else {
+                    smallest = nextMerged++;
+                }
+                children[2 * (node - leafCount) + child] = smallest;
+                weights[node] += weights[smallest];
+            }
+        }
+    }
+
+    /**
+     * Builds the tree for every symbol with a count above 0
+     *
+     * @param counts The count of every symbol
+     */
+    public static TreeBuilder fromCounts(long[] counts) {
+        // Sort the symbols by count, then by symbol, packed together into one long each
+        long[] packed = new long[counts.length];
+        int n = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] > 0) packed[n++] = (counts[s] << 8) | s;
+        }
+        Arrays.sort(packed, 0, n);
+
+        int[] symbols = new int[n];
+        long[] weights = new long[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = (int) (packed[i] & 0xFF);
+            weights[i] = packed[i] >>> 8;
+        }
+        return new TreeBuilder(symbols, weights, n);
+    }
+
+    /**
+     * Builds the tree for leaves that are already sorted by weight
+     *
+     * @param symbols The symbol of every leaf
+     * @param weights The weight of every leaf, in non-decreasing order
+     */
+    public static TreeBuilder fromSortedLeaves(int[] symbols, long[] weights) {
+        if (symbols.length != weights.length) throw new IllegalArgumentException("Every leaf needs a weight");
+        for (int i = 1; i < weights.length; i++) {
+            if (weights[i] < weights[i - 1]) throw new IllegalArgumentException("Leaves must be sorted by weight");
+        }
+        return new TreeBuilder(symbols.clone(), weights, symbols.length);
+    }
+
+    /**
+     * @return The index of the root node, -1 if there are no leaves
+     */
+    public int getRoot() {
+        return weights.length - 1;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * @return True if node is a leaf, false if it is a merged node
+     */
+    public boolean isLeaf(int node) {
+        return node < leafCount;
+    }
+
+    public int getSymbol(int leaf) {
+        return symbols[leaf];
+    }
+
+    public long getWeight(int node) {
+        return weights[node];
+    }
+
+    public int getLeft(int node) {
+        return children[2 * (node - leafCount)];
+    }
+
+    public int getRight(int node) {
+        return children[2 * (node - leafCount) + 1];
+    }
+
+    /**
+     * Works out every symbol's depth in the tree. A lone symbol still gets a
+     * code length of 1, since it needs at least one bit.
+     *
+     * @param alphabetSize The size of the array returned
+     * @return The code length of every symbol, 0 for symbols not in the tree
+     */
+    public int[] codeLengths(int alphabetSize) {
+        int[] lengths = new int[alphabetSize];
+        if (leafCount == 1) {
+            lengths[symbols[0]] = 1;
+            return lengths;
+        }
+
+        // Parents always come after their children, so one pass from the root down works
+        int[] depths = new int[weights.length];
+        for (int node = weights.length - 1; node >= leafCount; node--) {
+            depths[getLeft(node)] = depths[node] + 1;
+            depths[getRight(node)] = depths[node] + 1;
+        }
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            lengths[symbols[leaf]] = depths[leaf];
+        }
+        return lengths;
+    }
+
+    /**
+     * Makes a TreeNode copy of the tree, with every node's weight turned into a
+     * probability out of the root's weight
+     *
+     * @return The root TreeNode, null if there are no leaves
+     */
+    public TreeNode toTreeNode() {
+        if (leafCount == 0) return null;
+        return toTreeNode(getRoot(), weights[getRoot()]);
+    }
+
+    private TreeNode toTreeNode(int node, long total) {
+        double prob = total == 0 ? 0 : (double) weights[node] / total;
+        if (isLeaf(node)) {
+            return new TreeNode(new CharFreq((char) symbols[node], prob), null, null);
+        }
+        return new TreeNode(new CharFreq(null, prob),
+                toTreeNode(getLeft(node), total), toTreeNode(getRight(node), total));
+    }
+}
@@ -0,0 +1,45 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Round trips through the single-pass adaptive coder
+ */
+class AdaptiveHuffmanTest {
+    @Test
+    void roundTrip() throws IOException {
+        byte[] everyByte = new byte[2 * Histogram.SYMBOLS];
+        for (int i = 0; i < everyByte.length; i++) everyByte[i] = (byte) i;
+        byte[][] inputs = {
+            new byte[0],
+            { 7 },
+            everyByte,
+            TestData.text(30000, 23),
+            TestData.random(5000, 24)
+        };
+        for (byte[] data : inputs) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            AdaptiveHuffman.encode(new ByteArrayInputStream(data), encoded);
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            AdaptiveHuffman.decode(new ByteArrayInputStream(encoded.toByteArray()), decoded);
+            assertArrayEquals(data, decoded.toByteArray());
+        }
+    }
+
+    @Test
+    void rejectsTruncatedData() throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        AdaptiveHuffman.encode(new ByteArrayInputStream(TestData.text(1000, 25)), encoded);
+        byte[] truncated = Arrays.copyOf(encoded.toByteArray(), encoded.size() / 2);
+        assertThrows(IOException.class,
+                () -> AdaptiveHuffman.decode(new ByteArrayInputStream(truncated), new ByteArrayOutputStream()));
+    }
+}
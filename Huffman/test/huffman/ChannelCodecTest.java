@@ -0,0 +1,82 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Round trips through ChannelCodec, between files and other channels
+ */
+class ChannelCodecTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    private static byte[][] inputs() {
+        return new byte[][] {
+            new byte[0],
+            { 'x' },
+            TestData.text(BLOCK_SIZE, 1),
+            TestData.text(5 * BLOCK_SIZE + 17, 2),
+            TestData.random(3 * BLOCK_SIZE, 3),
+            TestData.mixed(6 * BLOCK_SIZE, 4)
+        };
+    }
+
+    @Test
+    void filesRoundTrip() throws IOException {
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(BLOCK_SIZE);
+        ChannelCodec channels = new ChannelCodec(codec);
+        Path source = dir.resolve("source");
+        Path encoded = dir.resolve("encoded");
+        Path decoded = dir.resolve("decoded");
+        for (byte[] data : inputs()) {
+            Files.write(source, data);
+            channels.encode(source, encoded);
+            // The same container the in-memory codec makes
+            assertArrayEquals(codec.encode(data), Files.readAllBytes(encoded));
+            channels.decode(encoded, decoded);
+            assertArrayEquals(data, Files.readAllBytes(decoded));
+        }
+    }
+
+    @Test
+    void smallerBlockSizeAfterALargerOne() throws IOException {
+        // The buffer of the larger block size is kept, and must not be filled past the smaller one
+        HuffmanCodec codec = new HuffmanCodec();
+        ChannelCodec channels = new ChannelCodec(codec);
+        Path source = Files.write(dir.resolve("source"), TestData.mixed(7 * BLOCK_SIZE + 5, 5));
+        Path encoded = dir.resolve("encoded");
+        for (int blockSize : new int[] { 4 * BLOCK_SIZE, BLOCK_SIZE, 3 * BLOCK_SIZE, 100 }) {
+            codec.setBlockSize(blockSize);
+            channels.encode(source, encoded);
+            assertArrayEquals(codec.encode(Files.readAllBytes(source)), Files.readAllBytes(encoded),
+                    "block size " + blockSize);
+        }
+    }
+
+    @Test
+    void streamChannelsRoundTrip() throws IOException {
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(BLOCK_SIZE);
+        ChannelCodec channels = new ChannelCodec(codec);
+        for (byte[] data : inputs()) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            channels.encode(Channels.newChannel(new ByteArrayInputStream(data)), Channels.newChannel(encoded));
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            channels.decode(Channels.newChannel(new ByteArrayInputStream(encoded.toByteArray())),
+                    Channels.newChannel(decoded));
+            assertArrayEquals(data, decoded.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that code tables come back the same from their headers, and that
+ * headers no prefix code could have written are rejected
+ */
+class CodeTableTest {
+    @Test
+    void headersRoundTrip() throws IOException {
+        // Fibonacci counts, for codes of up to 39 bits
+        long[] fibonacci = new long[Histogram.SYMBOLS];
+        long a = 1;
+        long b = 1;
+        for (int s = 0; s < 40; s++) {
+            fibonacci[s] = a;
+            long next = a + b;
+            a = b;
+            b = next;
+        }
+        int[] single = new int[Histogram.SYMBOLS];
+        single['q'] = 1;
+        long[] text = new long[Histogram.SYMBOLS];
+        byte[] data = TestData.mixed(20000, 40);
+        Histogram.count(data, 0, data.length, text);
+
+        int[][] codes = {
+            new int[Histogram.SYMBOLS],
+            single,
+            TreeBuilder.fromCounts(fibonacci).codeLengths(Histogram.SYMBOLS),
+            TreeBuilder.fromCounts(text).codeLengths(Histogram.SYMBOLS),
+            PackageMerge.codeLengths(text, 9)
+        };
+        for (int[] lengths : codes) {
+            CodeTable table = CodeTable.fromLengths(lengths);
+            byte[] header = header(table);
+            assertEquals(table.headerSize(), header.length);
+            CodeTable read = read(header);
+            assertArrayEquals(table.getLengths(), read.getLengths());
+            assertArrayEquals(table.getCodes(), read.getCodes());
+        }
+    }
+
+    @Test
+    void rejectsLengthsNoPrefixCodeHas() {
+        // Three codes of one bit, and 'a' to 'c' of one bit and 'd' of two
+        assertThrows(IOException.class, () -> read(new byte[] { 'a', 'c', 1, (byte) 0xE0 }));
+        assertThrows(IOException.class, () -> read(new byte[] { 'a', 'd', 2, 0x56 }));
+        // Every byte value with a code of 7 bits, of which there are only 128
+        byte[] sevens = new byte[3 + Histogram.SYMBOLS * 3 / 8];
+        sevens[1] = (byte) 0xFF;
+        sevens[2] = 3;
+        for (int i = 3; i < sevens.length; i++) sevens[i] = (byte) 0xFF;
+        assertThrows(IOException.class, () -> read(sevens));
+    }
+
+    @Test
+    void rejectsCorruptHeaders() {
+        // The first symbol after the last, no bits per length, and lengths too long
+        assertThrows(IOException.class, () -> read(new byte[] { 'b', 'a', 1, 0 }));
+        assertThrows(IOException.class, () -> read(new byte[] { 'a', 'b', 0, 0 }));
+        assertThrows(IOException.class, () -> read(new byte[] { 'a', 'a', 7, (byte) 0xFE }));
+        // Cut short
+        assertThrows(IOException.class, () -> read(new byte[] { 'a', 'z', 4, 0x11 }));
+    }
+
+    private static byte[] header(CodeTable table) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.write(new DataOutputStream(out));
+        return out.toByteArray();
+    }
+
+    private static CodeTable read(byte[] header) throws IOException {
+        return CodeTable.read(new DataInputStream(new ByteArrayInputStream(header)));
+    }
+}
@@ -0,0 +1,45 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Requests to a CompressionServer, and closing it
+ */
+class CompressionServerTest {
+    @Test
+    void roundTripThenClose() throws Exception {
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(4096);
+        CompressionServer server = new CompressionServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), codec).start();
+        try (CompressionClient client = new CompressionClient(server.getAddress())) {
+            for (byte[] data : new byte[][] { new byte[0], TestData.text(20000, 70), TestData.random(5000, 71) }) {
+                assertArrayEquals(data, client.decompress(client.compress(data)));
+            }
+            // A bad request is answered with an error, and the connection stays usable
+            assertThrows(IOException.class, () -> client.decompress(new byte[] { 1, 2, 3 }));
+            assertArrayEquals(new byte[] { 5 }, client.decompress(client.compress(new byte[] { 5 })));
+        } finally {
+            server.close();
+        }
+
+        // Closing ends the accepting thread and refuses new connections
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (acceptorRunning() && System.nanoTime() < deadline) Thread.sleep(10);
+        assertFalse(acceptorRunning());
+        assertThrows(IOException.class, () -> new CompressionClient(server.getAddress()).compress(new byte[1]));
+    }
+
+    private static boolean acceptorRunning() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().equals("huffman-server") && thread.isAlive());
+    }
+}
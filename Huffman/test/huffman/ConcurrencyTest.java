@@ -0,0 +1,148 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that shared encoders, decoders and codecs give correct output when
+ * many threads use them at once. Every thread round trips random slices of
+ * one input through one shared HuffmanEncoder and HuffmanDecoder, one shared
+ * HuffmanCodec with a shared code table cache, and its own HuffmanCoding on
+ * its own files, and compares the encoder's output with what it produced on
+ * a single thread.
+ */
+class ConcurrencyTest {
+    private static final int THREADS = 64;
+    private static final int ITERATIONS = 60;
+    private static final int SLICES = 64;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sharedCodersUnderContention() throws Exception {
+        byte[] data = TestData.mixed(1 << 20, 60);
+        long[] counts = new long[Histogram.SYMBOLS];
+        Histogram.count(data, 0, data.length, counts);
+        CodeTable table = TrainedTable.train(1, counts).getCodeTable();
+        HuffmanEncoder encoder = new HuffmanEncoder(table);
+        HuffmanDecoder decoder = new HuffmanDecoder(table);
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(16 << 10);
+        codec.setCodeTableCache(new CodeTableCache(32, 0.02));
+
+        // The slices and their encodings, worked out on this thread alone
+        SplittableRandom random = new SplittableRandom(42);
+        int[] offsets = new int[SLICES];
+        int[] lengths = new int[SLICES];
+        byte[][] expected = new byte[SLICES][];
+        for (int i = 0; i < SLICES; i++) {
+            lengths[i] = random.nextInt(64 << 10) + 1;
+            offsets[i] = random.nextInt(data.length - lengths[i] + 1);
+            expected[i] = encoder.encode(data, offsets[i], lengths[i]);
+        }
+
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    SplittableRandom own = new SplittableRandom(thread);
+                    Path input = dir.resolve(thread + ".in");
+                    Path encoded = dir.resolve(thread + ".enc");
+                    Path decoded = dir.resolve(thread + ".dec");
+                    start.await();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        int slice = own.nextInt(SLICES);
+                        byte[] original = Arrays.copyOfRange(data, offsets[slice], offsets[slice] + lengths[slice]);
+                        String where = "thread " + thread + ", slice " + slice + ": ";
+
+                        // Shared immutable encoder and decoder, arrays and direct buffers
+                        byte[] bits = encoder.encode(original);
+                        check(Arrays.equals(bits, expected[slice]), where + "encoder output", failures);
+                        check(Arrays.equals(decoder.decode(bits, 0, bits.length, original.length), original),
+                                where + "decoder output", failures);
+                        ByteBuffer direct = ByteBuffer.allocateDirect(original.length);
+                        decoder.decode(ByteBuffer.wrap(bits), direct, original.length);
+                        check(direct.flip().equals(ByteBuffer.wrap(original)), where + "direct decoder output", failures);
+
+                        // Shared codec and cache
+                        check(Arrays.equals(codec.decode(codec.encode(original)), original),
+                                where + "codec round trip", failures);
+
+                        // A HuffmanCoding per thread, now and then since it goes through files
+                        if (i % 20 == 0) {
+                            Files.write(input, original);
+                            Files.deleteIfExists(decoded);
+                            HuffmanCoding coding = new HuffmanCoding(input.toString());
+                            coding.setFormat(HuffmanCoding.Format.CANONICAL);
+                            coding.setDecodeEngine(HuffmanCoding.DecodeEngine.TABLE);
+                            coding.makeSortedList();
+                            coding.makeTree();
+                            coding.makeEncodings();
+                            coding.encode(encoded.toString());
+                            coding.decode(encoded.toString(), decoded.toString());
+                            check(Arrays.equals(Files.readAllBytes(decoded), original),
+                                    where + "HuffmanCoding round trip", failures);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> result : results) result.get(5, TimeUnit.MINUTES);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTrue(failures.isEmpty(), failures.size() + " wrong results, first " + failures.peek());
+    }
+
+    @Test
+    void decoderChecksRoomBeforeDecoding() throws IOException {
+        byte[] data = TestData.text(1000, 61);
+        long[] counts = new long[Histogram.SYMBOLS];
+        Histogram.count(data, 0, data.length, counts);
+        CodeTable table = CodeTable.fromLengths(PackageMerge.codeLengths(counts, 15));
+        byte[] bits = new HuffmanEncoder(table).encode(data);
+        HuffmanDecoder decoder = new HuffmanDecoder(table);
+
+        ByteBuffer src = ByteBuffer.wrap(bits);
+        ByteBuffer small = ByteBuffer.allocateDirect(data.length - 1);
+        assertThrows(IOException.class, () -> decoder.decode(src, small, data.length));
+        assertEquals(0, src.position());
+        assertEquals(0, small.position());
+
+        ByteBuffer room = ByteBuffer.allocate(data.length);
+        decoder.decode(src, room, data.length);
+        assertArrayEquals(data, room.array());
+    }
+
+    private static void check(boolean ok, String what, Queue<String> failures) {
+        if (!ok) failures.add("wrong " + what);
+    }
+}
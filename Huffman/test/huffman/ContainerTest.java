@@ -0,0 +1,275 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Round trips through ContainerWriter and ContainerReader, and the checks
+ * that turn corrupt containers into IOExceptions
+ */
+class ContainerTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    // A code for every byte, shorter for the letters TestData.text uses most
+    private static final CodeTable TABLE = table();
+
+    private static CodeTable table() {
+        int[] lengths = new int[Histogram.SYMBOLS];
+        Arrays.fill(lengths, 9);
+        for (int s = 'a'; s < 'a' + 8; s++) lengths[s] = 4;
+        return CodeTable.fromLengths(lengths);
+    }
+
+    private static byte[][] inputs() {
+        return new byte[][] {
+            new byte[0],
+            { 'x' },
+            TestData.text(BLOCK_SIZE, 1),
+            TestData.text(5 * BLOCK_SIZE + 17, 2),
+            TestData.random(3 * BLOCK_SIZE, 3),
+            TestData.mixed(6 * BLOCK_SIZE, 4)
+        };
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        for (byte[] data : inputs()) {
+            byte[] encoded = encode(data);
+            assertEquals(ContainerFormat.MAGIC, ByteBuffer.wrap(encoded).getInt());
+            assertArrayEquals(data, decode(encoded));
+        }
+    }
+
+    @Test
+    void readerSeesEveryBlock() throws IOException {
+        byte[] data = TestData.mixed(6 * BLOCK_SIZE + 100, 6);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (ContainerWriter writer = new ContainerWriter(encoded, BLOCK_SIZE, true)) {
+            for (int start = 0; start < data.length; start += BLOCK_SIZE) {
+                writer.writeBlock(data, start, Math.min(BLOCK_SIZE, data.length - start));
+            }
+        }
+
+        byte[] decoded = new byte[data.length];
+        int position = 0;
+        int blocks = 0;
+        try (ContainerReader reader = new ContainerReader(new ByteArrayInputStream(encoded.toByteArray()))) {
+            assertTrue(reader.isIndexed());
+            assertEquals(BLOCK_SIZE, reader.getBlockSize());
+            while (reader.nextBlock()) {
+                // Skip every other block, which the reader has to step over on its own
+                if (blocks++ % 2 == 1) {
+                    position += reader.getOriginalSize();
+                    continue;
+                }
+                position += reader.readBlock(decoded, position);
+            }
+        }
+        assertEquals(7, blocks);
+        assertEquals(data.length, position);
+        for (int start = 0; start < data.length; start += 2 * BLOCK_SIZE) {
+            int end = Math.min(data.length, start + BLOCK_SIZE);
+            assertArrayEquals(Arrays.copyOfRange(data, start, end), Arrays.copyOfRange(decoded, start, end));
+        }
+    }
+
+    @Test
+    void parallelEncoderRoundTrip() throws IOException {
+        byte[] data = TestData.mixed(20 * BLOCK_SIZE + 3, 7);
+        byte[] single = parallelEncode(data, 1);
+        // Blocks are written in input order, so the output doesn't depend on the threads
+        assertArrayEquals(single, parallelEncode(data, 3));
+        assertArrayEquals(data, decode(single));
+        assertArrayEquals(new byte[0], decode(parallelEncode(new byte[0], 2)));
+    }
+
+    @Test
+    void parallelRoundTrip() throws IOException {
+        byte[] data = TestData.mixed(20 * BLOCK_SIZE + 3, 7);
+        Path source = dir.resolve("source");
+        Path encoded = dir.resolve("encoded");
+        Path decoded = dir.resolve("decoded");
+        Files.write(source, data);
+
+        try (ParallelEncoder encoder = new ParallelEncoder(3, BLOCK_SIZE, true);
+             ParallelDecoder decoder = new ParallelDecoder(3)) {
+            try (var in = Files.newInputStream(source); var out = Files.newOutputStream(encoded)) {
+                encoder.encode(in, out);
+            }
+            decoder.decode(encoded, decoded);
+        }
+        assertArrayEquals(data, Files.readAllBytes(decoded));
+
+        // The same file read in order, ignoring the index
+        assertArrayEquals(data, decode(Files.readAllBytes(encoded)));
+    }
+
+    @Test
+    void parallelDecoderRejectsCorruptIndex() throws IOException {
+        byte[] data = TestData.text(8 * BLOCK_SIZE, 14);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelEncoder encoder = new ParallelEncoder(1, BLOCK_SIZE, true)) {
+            encoder.encode(new ByteArrayInputStream(data), out);
+        }
+        byte[] encoded = out.toByteArray();
+        int footer = encoded.length - ContainerFormat.FOOTER_SIZE;
+        int index = (int) ByteBuffer.wrap(encoded).getLong(footer);
+
+        // The index offset, the footer magic, the block count and the offset and size of the first entry
+        int[] positions = { footer + 7, footer + 8, index, index + 3, index + 4, index + 4 + 7, index + 4 + 11 };
+        try (ParallelDecoder decoder = new ParallelDecoder(2)) {
+            for (int position : positions) {
+                for (int bit : new int[] { 1, 0x40 }) {
+                    byte[] corrupt = encoded.clone();
+                    corrupt[position] ^= bit;
+                    Path file = dir.resolve("corrupt");
+                    Files.write(file, corrupt);
+                    assertThrows(IOException.class, () -> decoder.decode(file, dir.resolve("decoded")),
+                            "byte " + position + " bit " + bit);
+                }
+            }
+
+            Path truncated = dir.resolve("truncated");
+            Files.write(truncated, Arrays.copyOf(encoded, ContainerFormat.FOOTER_SIZE));
+            assertThrows(IOException.class, () -> decoder.decode(truncated, dir.resolve("decoded")));
+        }
+    }
+
+    @Test
+    void parallelDecoderRejectsBlocksOutOfPlace() throws IOException {
+        byte[] data = TestData.text(8 * BLOCK_SIZE, 15);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelEncoder encoder = new ParallelEncoder(1, BLOCK_SIZE, true)) {
+            encoder.encode(new ByteArrayInputStream(data), out);
+        }
+        byte[] encoded = out.toByteArray();
+        int index = (int) ByteBuffer.wrap(encoded).getLong(encoded.length - ContainerFormat.FOOTER_SIZE);
+        long first = ByteBuffer.wrap(encoded).getLong(index + 4);
+        long second = ByteBuffer.wrap(encoded).getLong(index + 4 + 12);
+
+        // Every entry is a real block of the same size, but the blocks would come out in the
+        // wrong order, one of them twice, or one would be missed out
+        byte[] swapped = encoded.clone();
+        ByteBuffer.wrap(swapped).putLong(index + 4, second).putLong(index + 4 + 12, first);
+        byte[] repeated = encoded.clone();
+        ByteBuffer.wrap(repeated).putLong(index + 4 + 12, first);
+        byte[] skipped = encoded.clone();
+        ByteBuffer.wrap(skipped).putLong(index + 4, second);
+        // The trailer's block count and total length, which no longer match the index
+        byte[] count = encoded.clone();
+        count[index - 1] ^= 1;
+        byte[] length = encoded.clone();
+        length[index - 5] ^= 1;
+
+        try (ParallelDecoder decoder = new ParallelDecoder(2)) {
+            for (byte[] corrupt : new byte[][] { swapped, repeated, skipped, count, length }) {
+                Path file = dir.resolve("corrupt");
+                Files.write(file, corrupt);
+                assertThrows(IOException.class, () -> decoder.decode(file, dir.resolve("decoded")));
+            }
+        }
+    }
+
+    @Test
+    void rejectsFlippedBits() throws IOException {
+        byte[] encoded = encode(TestData.text(2 * BLOCK_SIZE, 8));
+        // Every byte of the first block, its header, its table and its codes, but the
+        // last one, whose low bits may only be padding
+        int firstBlockEnd = ContainerFormat.HEADER_SIZE + ContainerFormat.BLOCK_HEADER_SIZE
+                + payloadSize(encoded, ContainerFormat.HEADER_SIZE);
+        for (int i = ContainerFormat.HEADER_SIZE; i < firstBlockEnd - 1; i++) {
+            byte[] corrupt = encoded.clone();
+            corrupt[i] ^= 0x10;
+            assertThrows(IOException.class, () -> decode(corrupt), "byte " + i);
+        }
+    }
+
+    @Test
+    void rejectsWrongChecksum() throws IOException {
+        for (byte[] data : new byte[][] { TestData.text(BLOCK_SIZE, 9), TestData.random(BLOCK_SIZE, 9) }) {
+            byte[] encoded = encode(data);
+            // The last byte of the first block's CRC32
+            encoded[ContainerFormat.HEADER_SIZE + ContainerFormat.BLOCK_HEADER_SIZE - 1] ^= 1;
+            IOException e = assertThrows(IOException.class, () -> decode(encoded));
+            assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsTruncatedData() throws IOException {
+        byte[] encoded = encode(TestData.text(3 * BLOCK_SIZE, 10));
+        for (int length = 0; length < encoded.length; length += 97) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThrows(IOException.class, () -> decode(truncated));
+        }
+        assertThrows(IOException.class, () -> decode(Arrays.copyOf(encoded, encoded.length - 1)));
+    }
+
+    @Test
+    void rejectsWrongTrailer() throws IOException {
+        byte[] encoded = encode(TestData.text(2 * BLOCK_SIZE, 11));
+        // The low byte of the total length, just before the block count
+        encoded[encoded.length - 5] ^= 1;
+        assertThrows(IOException.class, () -> decode(encoded));
+    }
+
+    @Test
+    void rejectsWrongMagicAndVersion() throws IOException {
+        byte[] encoded = encode(TestData.text(100, 12));
+        byte[] magic = encoded.clone();
+        magic[0] = 'X';
+        assertThrows(IOException.class, () -> decode(magic));
+        byte[] version = encoded.clone();
+        version[4] = (byte) (ContainerFormat.VERSION + 1);
+        assertThrows(IOException.class, () -> decode(version));
+    }
+
+    private static byte[] encode(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContainerWriter writer = new ContainerWriter(out, BLOCK_SIZE)) {
+            for (int start = 0; start < data.length; start += BLOCK_SIZE) {
+                writer.writeBlock(data, start, Math.min(BLOCK_SIZE, data.length - start), TABLE);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] parallelEncode(byte[] data, int threads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelEncoder encoder = new ParallelEncoder(threads, BLOCK_SIZE)) {
+            encoder.encode(new ByteArrayInputStream(data), out);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(byte[] encoded) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContainerReader reader = new ContainerReader(new ByteArrayInputStream(encoded))) {
+            while (reader.nextBlock()) {
+                byte[] block = new byte[reader.getOriginalSize()];
+                out.write(block, 0, reader.readBlock(block, 0));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int payloadSize(byte[] encoded, int blockOffset) {
+        return ByteBuffer.wrap(encoded).getInt(blockOffset + 5);
+    }
+}
@@ -0,0 +1,154 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that FlatTree decodes what was encoded, the same as TableDecoder,
+ * whichever way the tree was laid out
+ */
+class FlatTreeTest {
+    @Test
+    void flatTreeAndTableDecoderAgree() throws IOException {
+        Random random = new Random(20);
+        for (int round = 0; round < 40; round++) {
+            long[] counts = counts(random, round);
+            int[] lengths = round % 2 == 0
+                    ? TreeBuilder.fromCounts(counts).codeLengths(Histogram.SYMBOLS)
+                    : PackageMerge.codeLengths(counts, 9 + round % 7);
+            CodeTable table = CodeTable.fromLengths(lengths);
+            byte[] data = sample(counts, 5000 + random.nextInt(5000), random);
+            byte[] encoded = new HuffmanEncoder(table).encode(data);
+
+            FlatTree tree = FlatTree.of(table);
+            assertArrayEquals(table.toEncodings(), tree.encodings(Histogram.SYMBOLS));
+            assertArrayEquals(table.getCodes(), tree.codes(Histogram.SYMBOLS));
+            assertArrayEquals(table.getLengths(), tree.codeLengths(Histogram.SYMBOLS));
+            // The tables are built from the tree, so the two decoders can't disagree about the code
+            TableDecoder decoder = new TableDecoder(tree);
+            assertArrayEquals(data, decodeInChunks(tree, encoded, data.length, random), "tree, round " + round);
+            assertArrayEquals(data, decodeInChunks(decoder, encoded, data.length, random), "table, round " + round);
+        }
+    }
+
+    @Test
+    void longCodes() throws IOException {
+        // Fibonacci counts give the deepest tree there is, with codes longer than any lookup level
+        long[] counts = new long[Histogram.SYMBOLS];
+        long a = 1;
+        long b = 1;
+        for (int s = 0; s < 40; s++) {
+            counts[s] = a;
+            long next = a + b;
+            a = b;
+            b = next;
+        }
+        CodeTable table = CodeTable.fromLengths(TreeBuilder.fromCounts(counts).codeLengths(Histogram.SYMBOLS));
+        byte[] data = new byte[80];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i % 40);
+        byte[] encoded = new HuffmanEncoder(table).encode(data);
+        assertArrayEquals(data, decode(FlatTree.of(table), encoded, data.length));
+        TableDecoder decoder = new TableDecoder(FlatTree.of(table));
+        assertArrayEquals(data, decodeInChunks(decoder, encoded, data.length, new Random(22)));
+    }
+
+    @Test
+    void treeLayoutsAgree() throws IOException {
+        long[] counts = counts(new Random(21), 3);
+        TreeBuilder builder = TreeBuilder.fromCounts(counts);
+        FlatTree fromBuilder = FlatTree.of(builder);
+        String[] encodings = fromBuilder.encodings(Histogram.SYMBOLS);
+
+        // The tree's own codes, turned into a code table and laid out again
+        long[] codes = fromBuilder.codes(Histogram.SYMBOLS);
+        int[] lengths = fromBuilder.codeLengths(Histogram.SYMBOLS);
+        for (int s = 0; s < encodings.length; s++) {
+            if (encodings[s] == null) continue;
+            assertEquals(Long.parseLong(encodings[s], 2), codes[s]);
+            assertEquals(encodings[s].length(), lengths[s]);
+        }
+        assertArrayEquals(builder.codeLengths(Histogram.SYMBOLS), lengths);
+        FlatTree fromCodes = FlatTree.of(codes, lengths);
+        assertArrayEquals(encodings, fromCodes.encodings(Histogram.SYMBOLS));
+        assertEquals(fromBuilder.size(), fromCodes.size());
+    }
+
+    @Test
+    void singleSymbol() throws IOException {
+        int[] lengths = new int[Histogram.SYMBOLS];
+        lengths['q'] = 1;
+        CodeTable table = CodeTable.fromLengths(lengths);
+        byte[] data = "qqqqqqqqqqq".getBytes();
+        byte[] encoded = new HuffmanEncoder(table).encode(data);
+        assertArrayEquals(data, decode(FlatTree.of(table), encoded, data.length));
+    }
+
+    @Test
+    void bitsOffTheCodeAreRejected() {
+        // One symbol only uses the 0 branch, so a 1 bit leads nowhere
+        int[] lengths = new int[Histogram.SYMBOLS];
+        lengths['q'] = 1;
+        CodeTable table = CodeTable.fromLengths(lengths);
+        byte[] encoded = { (byte) 0x80 };
+        assertThrows(IOException.class, () -> decode(FlatTree.of(table), encoded, 1));
+
+        FlatTree empty = FlatTree.of(CodeTable.fromLengths(new int[Histogram.SYMBOLS]));
+        assertThrows(IOException.class, () -> decode(empty, encoded, 1));
+    }
+
+    // Counts that are uniform, skewed or sparse, depending on the round
+    private static long[] counts(Random random, int round) {
+        long[] counts = new long[Histogram.SYMBOLS];
+        int symbols = round % 3 == 0 ? Histogram.SYMBOLS : 2 + random.nextInt(60);
+        for (int i = 0; i < symbols; i++) {
+            int s = symbols == Histogram.SYMBOLS ? i : random.nextInt(Histogram.SYMBOLS);
+            counts[s] += round % 3 == 1 ? 1 + random.nextInt(10) : 1 + (long) Math.pow(random.nextInt(40), 4);
+        }
+        return counts;
+    }
+
+    // Bytes whose values are the symbols with counts, in random order
+    private static byte[] sample(long[] counts, int length, Random random) {
+        int[] present = new int[Histogram.SYMBOLS];
+        int count = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] > 0) present[count++] = s;
+        }
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) present[random.nextInt(count)];
+        return data;
+    }
+
+    private static byte[] decode(FlatTree tree, byte[] encoded, int length) throws IOException {
+        byte[] out = new byte[length];
+        assertEquals(length, tree.decode(new BitReader(encoded, 0, encoded.length), out, 0, length));
+        return out;
+    }
+
+    // Decodes a few symbols at a time from one reader, as the streaming decoders do
+    private static byte[] decodeInChunks(FlatTree tree, byte[] encoded, int length, Random random)
+            throws IOException {
+        BitReader in = new BitReader(encoded, 0, encoded.length);
+        byte[] out = new byte[length];
+        for (int position = 0; position < length; ) {
+            position += tree.decode(in, out, position, Math.min(length - position, 1 + random.nextInt(700)));
+        }
+        return out;
+    }
+
+    private static byte[] decodeInChunks(TableDecoder decoder, byte[] encoded, int length, Random random)
+            throws IOException {
+        BitReader in = new BitReader(encoded, 0, encoded.length);
+        byte[] out = new byte[length];
+        for (int position = 0; position < length; ) {
+            position += decoder.decode(in, out, position, Math.min(length - position, 1 + random.nextInt(700)));
+        }
+        return out;
+    }
+}
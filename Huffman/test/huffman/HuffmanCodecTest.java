@@ -0,0 +1,196 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Round trips through every way HuffmanCodec reads and writes memory, and
+ * the checks that turn corrupt containers into IOExceptions
+ */
+class HuffmanCodecTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    private static HuffmanCodec codec() {
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(BLOCK_SIZE);
+        return codec;
+    }
+
+    private static byte[][] inputs() {
+        return new byte[][] {
+            new byte[0],
+            { 'x' },
+            TestData.text(BLOCK_SIZE, 1),
+            TestData.text(5 * BLOCK_SIZE + 17, 2),
+            TestData.random(3 * BLOCK_SIZE, 3),
+            TestData.mixed(6 * BLOCK_SIZE, 4)
+        };
+    }
+
+    @Test
+    void arraysRoundTrip() throws IOException {
+        HuffmanCodec codec = codec();
+        for (byte[] data : inputs()) {
+            byte[] encoded = codec.encode(data);
+            assertTrue(encoded.length <= codec.maxEncodedLength(data.length));
+            assertEquals(data.length, HuffmanCodec.decodedLength(encoded, 0, encoded.length));
+            assertArrayEquals(data, codec.decode(encoded));
+        }
+    }
+
+    @Test
+    void arraysRoundTripAtAnOffset() throws IOException {
+        HuffmanCodec codec = codec();
+        byte[] data = TestData.text(3 * BLOCK_SIZE, 5);
+        byte[] out = new byte[(int) codec.maxEncodedLength(data.length) + 20];
+        int size = codec.encode(data, 0, data.length, out, 10);
+
+        byte[] decoded = new byte[data.length + 7];
+        assertEquals(data.length, codec.decode(out, 10, size, decoded, 7));
+        assertArrayEquals(data, Arrays.copyOfRange(decoded, 7, decoded.length));
+    }
+
+    @Test
+    void buffersRoundTrip() throws IOException {
+        HuffmanCodec codec = codec();
+        for (byte[] data : inputs()) {
+            for (boolean direct : new boolean[] { false, true }) {
+                ByteBuffer src = buffer(data.length, direct).put(data).flip();
+                ByteBuffer encoded = buffer((int) codec.maxEncodedLength(data.length), direct);
+                codec.encode(src, encoded);
+                assertFalse(src.hasRemaining());
+                encoded.flip();
+
+                ByteBuffer decoded = buffer(data.length, direct);
+                codec.decode(encoded, decoded);
+                assertFalse(encoded.hasRemaining());
+                assertArrayEquals(data, contents(decoded.flip()));
+            }
+        }
+    }
+
+    @Test
+    void streamsRoundTrip() throws IOException {
+        HuffmanCodec codec = codec();
+        for (byte[] data : inputs()) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            codec.encode(new ByteArrayInputStream(data), encoded);
+            assertArrayEquals(codec.encode(data), encoded.toByteArray());
+
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            codec.decode(new ByteArrayInputStream(encoded.toByteArray()), decoded);
+            assertArrayEquals(data, decoded.toByteArray());
+        }
+    }
+
+    @Test
+    void hugeBlockSizeInTheHeader() throws IOException {
+        // Buffers are sized by the blocks there are, not by the block size the header claims
+        HuffmanCodec codec = codec();
+        byte[] data = TestData.text(100, 6);
+        byte[] encoded = codec.encode(data);
+        ByteBuffer.wrap(encoded).putInt(6, Integer.MAX_VALUE);
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        codec.decode(new ByteArrayInputStream(encoded), decoded);
+        assertArrayEquals(data, decoded.toByteArray());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        codec.decode(ByteBuffer.wrap(encoded), direct);
+        assertArrayEquals(data, contents(direct.flip()));
+    }
+
+    @Test
+    void rejectsFlippedBits() {
+        HuffmanCodec codec = codec();
+        byte[] encoded = codec.encode(TestData.text(2 * BLOCK_SIZE, 8));
+        // Every byte of the first block, its header, its table and its codes, but the
+        // last one, whose low bits may only be padding
+        int firstBlockEnd = ContainerFormat.HEADER_SIZE + ContainerFormat.BLOCK_HEADER_SIZE
+                + ByteBuffer.wrap(encoded).getInt(ContainerFormat.HEADER_SIZE + 5);
+        for (int i = ContainerFormat.HEADER_SIZE; i < firstBlockEnd - 1; i++) {
+            byte[] corrupt = encoded.clone();
+            corrupt[i] ^= 0x10;
+            assertThrows(IOException.class, () -> codec.decode(corrupt), "byte " + i);
+        }
+    }
+
+    @Test
+    void rejectsWrongChecksum() {
+        HuffmanCodec codec = codec();
+        for (byte[] data : new byte[][] { TestData.text(BLOCK_SIZE, 9), TestData.random(BLOCK_SIZE, 9) }) {
+            byte[] encoded = codec.encode(data);
+            // The last byte of the first block's CRC32
+            encoded[ContainerFormat.HEADER_SIZE + ContainerFormat.BLOCK_HEADER_SIZE - 1] ^= 1;
+            IOException e = assertThrows(IOException.class, () -> codec.decode(encoded));
+            assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsTruncatedData() {
+        HuffmanCodec codec = codec();
+        byte[] encoded = codec.encode(TestData.mixed(3 * BLOCK_SIZE, 10));
+        for (int length = 0; length < encoded.length; length += 97) {
+            int end = length;
+            assertThrows(IOException.class, () -> codec.decode(encoded, 0, end));
+        }
+        assertThrows(IOException.class, () -> codec.decode(encoded, 0, encoded.length - 1));
+    }
+
+    @Test
+    void rejectsWrongTrailer() {
+        HuffmanCodec codec = codec();
+        byte[] encoded = codec.encode(TestData.text(2 * BLOCK_SIZE, 11));
+        // The low byte of the total length, just before the block count
+        encoded[encoded.length - 5] ^= 1;
+        assertThrows(IOException.class, () -> codec.decode(encoded));
+    }
+
+    @Test
+    void rejectsWrongMagicAndVersion() {
+        HuffmanCodec codec = codec();
+        byte[] encoded = codec.encode(TestData.text(100, 12));
+        byte[] magic = encoded.clone();
+        magic[0] = 'X';
+        assertThrows(IOException.class, () -> codec.decode(magic));
+        byte[] version = encoded.clone();
+        version[4] = (byte) (ContainerFormat.VERSION + 1);
+        assertThrows(IOException.class, () -> codec.decode(version));
+    }
+
+    @Test
+    void rejectsSmallOutput() {
+        HuffmanCodec codec = codec();
+        byte[] data = TestData.text(2 * BLOCK_SIZE, 13);
+        byte[] encoded = codec.encode(data);
+        assertThrows(IOException.class, () -> codec.decode(encoded, 0, encoded.length, new byte[data.length - 1], 0));
+
+        ByteBuffer src = ByteBuffer.wrap(encoded);
+        ByteBuffer dst = ByteBuffer.allocate(data.length - 1);
+        assertThrows(IOException.class, () -> codec.decode(src, dst));
+        assertEquals(0, src.position());
+        assertEquals(0, dst.position());
+    }
+
+    private static ByteBuffer buffer(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static byte[] contents(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,153 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Round trips of files through HuffmanCoding, the way the driver uses it,
+ * in every format and with every decode engine
+ */
+class HuffmanCodingTest {
+    @TempDir
+    Path dir;
+
+    private final List<Path> inputs = new ArrayList<>();
+
+    @BeforeEach
+    void makeInputs() throws IOException {
+        // The sample inputs that come with the assignment, where the tests are run from
+        for (String name : new String[] { "input1.txt", "input2.txt", "input3.txt", "input6.txt" }) {
+            Path sample = Path.of(name);
+            if (Files.exists(sample)) inputs.add(sample);
+        }
+        inputs.add(write("empty.txt", new byte[0]));
+        inputs.add(write("one.txt", new byte[] { 'a' }));
+        inputs.add(write("same.txt", "aaaaaaaaaaaaaaaaaaaa".getBytes()));
+        inputs.add(write("text.txt", TestData.text(50000, 30)));
+        inputs.add(write("random.bin", TestData.random(20000, 31)));
+        inputs.add(write("mixed.bin", TestData.mixed(60000, 32)));
+    }
+
+    @Test
+    void everyFormatAndEngine() throws IOException {
+        for (HuffmanCoding.Format format : HuffmanCoding.Format.values()) {
+            for (HuffmanCoding.DecodeEngine engine : HuffmanCoding.DecodeEngine.values()) {
+                for (Path input : inputs) {
+                    HuffmanCoding coding = new HuffmanCoding(input.toString());
+                    coding.setFormat(format);
+                    coding.setDecodeEngine(engine);
+                    coding.setBlockSize(8192);
+                    assertRoundTrip(coding, input, format + " " + engine);
+                }
+            }
+        }
+    }
+
+    @Test
+    void containerWithThreads() throws IOException {
+        for (Path input : inputs) {
+            HuffmanCoding coding = new HuffmanCoding(input.toString());
+            coding.setFormat(HuffmanCoding.Format.CONTAINER);
+            coding.setBlockSize(4096);
+            coding.setHistogramThreads(2);
+            coding.setEncoderThreads(3);
+            coding.setDecoderThreads(3);
+            assertRoundTrip(coding, input, "threads");
+        }
+    }
+
+    @Test
+    void containerWithCacheAndLimitedCodes() throws IOException {
+        CodeTableCache cache = new CodeTableCache(8, 0.05);
+        for (Path input : inputs) {
+            HuffmanCoding coding = new HuffmanCoding(input.toString());
+            coding.setFormat(HuffmanCoding.Format.CONTAINER);
+            coding.setBlockSize(4096);
+            coding.setCodeTableCache(cache);
+            coding.makeSortedList();
+            coding.makeTree(12);
+            coding.makeEncodings();
+            assertRoundTrip(coding, coding, input, "cache");
+        }
+        assertTrue(cache.getHits() + cache.getMisses() > 0);
+    }
+
+    @Test
+    void cachedTreeMatchesBuiltTree() throws IOException {
+        for (Path input : inputs) {
+            HuffmanCoding built = new HuffmanCoding(input.toString());
+            built.makeSortedList();
+            built.makeTree();
+            built.makeEncodings();
+            HuffmanCoding cached = new HuffmanCoding(input.toString());
+            cached.setCodeTableCache(new CodeTableCache(8, 0.05));
+            cached.makeSortedList();
+            cached.makeTree();
+            cached.makeEncodings();
+
+            // The same code lengths, and for one symbol, with its placeholder, the same codes
+            String[] expected = built.getEncodings();
+            String[] actual = cached.getEncodings();
+            for (int s = 0; s < expected.length; s++) {
+                assertEquals(expected[s] == null ? 0 : expected[s].length(),
+                        actual[s] == null ? 0 : actual[s].length(), input + " symbol " + s);
+            }
+            if (Arrays.stream(Histogram.count(input.toString())).filter(count -> count > 0).count() == 1) {
+                assertArrayEquals(expected, actual, input.toString());
+            }
+            assertRoundTrip(cached, input, "cached tree");
+        }
+    }
+
+    @Test
+    void canonicalLimitedCodes() throws IOException {
+        for (Path input : inputs) {
+            HuffmanCoding coding = new HuffmanCoding(input.toString());
+            coding.setFormat(HuffmanCoding.Format.CANONICAL);
+            coding.setDecodeEngine(HuffmanCoding.DecodeEngine.TABLE);
+            coding.makeSortedList();
+            coding.makeTree(9);
+            coding.makeEncodings();
+
+            // A new object knows nothing of the code but what the file's header says
+            HuffmanCoding decoder = new HuffmanCoding(input.toString());
+            decoder.setFormat(HuffmanCoding.Format.CANONICAL);
+            assertRoundTrip(coding, decoder, input, "canonical");
+        }
+    }
+
+    private void assertRoundTrip(HuffmanCoding coding, Path input, String setup) throws IOException {
+        coding.makeSortedList();
+        coding.makeTree();
+        coding.makeEncodings();
+        assertRoundTrip(coding, coding, input, setup);
+    }
+
+    private void assertRoundTrip(HuffmanCoding encoder, HuffmanCoding decoder, Path input, String setup)
+            throws IOException {
+        Path encoded = dir.resolve("encoded");
+        Path decoded = dir.resolve("decoded");
+        // HuffmanCoding only prints its errors, so nothing may be left over from the last round trip
+        Files.deleteIfExists(encoded);
+        Files.deleteIfExists(decoded);
+        encoder.encode(encoded.toString());
+        decoder.decode(encoded.toString(), decoded.toString());
+        assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(decoded), setup + " " + input);
+    }
+
+    private Path write(String name, byte[] data) throws IOException {
+        return Files.write(dir.resolve(name), data);
+    }
+}
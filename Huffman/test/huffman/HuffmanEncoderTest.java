@@ -0,0 +1,57 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that HuffmanDecoder gives back what HuffmanEncoder wrote, through
+ * arrays and buffers
+ */
+class HuffmanEncoderTest {
+    private static CodeTable table(byte[] data) {
+        long[] counts = new long[Histogram.SYMBOLS];
+        Histogram.count(data, 0, data.length, counts);
+        return CodeTable.fromLengths(PackageMerge.codeLengths(counts, 12));
+    }
+
+    @Test
+    void decoderMatchesEncoder() throws IOException {
+        byte[] data = TestData.text(20000, 22);
+        CodeTable table = table(data);
+        HuffmanEncoder encoder = new HuffmanEncoder(table);
+        HuffmanDecoder decoder = new HuffmanDecoder(table);
+
+        byte[] encoded = encoder.encode(data);
+        assertEquals(encoded.length, encoder.encodedLength(data, 0, data.length));
+        assertArrayEquals(data, decoder.decode(encoded, 0, encoded.length, data.length));
+        assertThrows(IOException.class, () -> decoder.decode(encoded, 0, encoded.length / 2, data.length));
+    }
+
+    @Test
+    void buffersMatchArrays() throws IOException {
+        byte[] data = TestData.text(5000, 26);
+        CodeTable table = table(data);
+        HuffmanEncoder encoder = new HuffmanEncoder(table);
+        HuffmanDecoder decoder = new HuffmanDecoder(table);
+        byte[] encoded = encoder.encode(data);
+
+        for (boolean direct : new boolean[] { false, true }) {
+            ByteBuffer src = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+            src.put(data).flip();
+            ByteBuffer bits = ByteBuffer.allocate((int) encoder.maxEncodedLength(data.length));
+            encoder.encode(src, bits);
+            bits.flip();
+            assertEquals(ByteBuffer.wrap(encoded), bits);
+
+            ByteBuffer decoded = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+            decoder.decode(bits, decoded, data.length);
+            assertEquals(ByteBuffer.wrap(data), decoded.flip());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Round trips through HuffmanOutputStream and HuffmanInputStream, read a
+ * byte, a few bytes or whole blocks at a time
+ */
+class HuffmanStreamTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HuffmanOutputStream stream = new HuffmanOutputStream(out, BLOCK_SIZE)) {
+            // Writes of different sizes, some across block boundaries
+            for (int start = 0, step = 1; start < data.length; start += step, step = step * 3 % 7919) {
+                stream.write(data, start, Math.min(step, data.length - start));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        byte[] data = TestData.mixed(5 * BLOCK_SIZE + 99, 80);
+        byte[] encoded = compress(data);
+        assertEquals(data.length, HuffmanCodec.decodedLength(encoded, 0, encoded.length));
+
+        for (int chunk : new int[] { 1, 100, BLOCK_SIZE, 3 * BLOCK_SIZE }) {
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(encoded))) {
+                if (chunk == 1) {
+                    for (int b; (b = in.read()) >= 0; ) decoded.write(b);
+                } else {
+                    byte[] buffer = new byte[chunk];
+                    for (int n; (n = in.read(buffer, 0, chunk)) >= 0; ) decoded.write(buffer, 0, n);
+                }
+            }
+            assertArrayEquals(data, decoded.toByteArray(), "chunks of " + chunk);
+        }
+    }
+
+    @Test
+    void skip() throws IOException {
+        byte[] data = TestData.text(4 * BLOCK_SIZE, 81);
+        byte[] encoded = compress(data);
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(encoded))) {
+            assertEquals(10, in.skip(10));
+            assertEquals(data[10], (byte) in.read());
+            // Past the rest of the first block and all of the second
+            assertEquals(2 * BLOCK_SIZE, in.skip(2 * BLOCK_SIZE));
+            assertEquals(data[2 * BLOCK_SIZE + 11], (byte) in.read());
+            assertEquals(data.length - 2 * BLOCK_SIZE - 12, in.skip(Long.MAX_VALUE));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void hugeBlockSizeInTheHeader() throws IOException {
+        // The buffer is sized by the blocks there are, not by the block size the header claims
+        byte[] data = TestData.text(100, 82);
+        byte[] encoded = compress(data);
+        ByteBuffer.wrap(encoded).putInt(6, Integer.MAX_VALUE);
+
+        byte[] decoded = new byte[data.length];
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(encoded))) {
+            for (int i = 0; i < decoded.length; i++) decoded[i] = (byte) in.read();
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(data, decoded);
+    }
+}
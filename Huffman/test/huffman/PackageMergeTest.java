@@ -0,0 +1,143 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that package-merge gives complete codes within the length limit,
+ * that cost no more than they have to
+ */
+class PackageMergeTest {
+    @Test
+    void codesFitTheLimit() {
+        Random random = new Random(70);
+        for (int round = 0; round < 40; round++) {
+            long[] counts = counts(random, round);
+            int symbols = symbols(counts);
+            int shortest = 64 - Long.numberOfLeadingZeros(symbols - 1);
+            for (int maxLength = Math.max(1, shortest); maxLength <= 16; maxLength++) {
+                int[] lengths = PackageMerge.codeLengths(counts, maxLength);
+                long kraft = 0;
+                for (int s = 0; s < counts.length; s++) {
+                    if (counts[s] == 0) {
+                        assertEquals(0, lengths[s]);
+                        continue;
+                    }
+                    assertTrue(lengths[s] >= 1 && lengths[s] <= maxLength, "length " + lengths[s]);
+                    kraft += 1L << (maxLength - lengths[s]);
+                }
+                // Every bit pattern leads to a symbol
+                assertEquals(1L << maxLength, kraft, "round " + round + ", limit " + maxLength);
+            }
+        }
+    }
+
+    @Test
+    void costsNoMoreThanItHasTo() {
+        Random random = new Random(71);
+        for (int round = 0; round < 40; round++) {
+            long[] counts = counts(random, round);
+            // A limit no code reaches gives a huffman code, and tighter limits can only cost more
+            long previous = cost(counts, PackageMerge.codeLengths(counts, 62));
+            assertEquals(huffmanCost(counts), previous, "round " + round);
+            int shortest = 64 - Long.numberOfLeadingZeros(symbols(counts) - 1);
+            for (int maxLength = 16; maxLength >= Math.max(1, shortest); maxLength--) {
+                long cost = cost(counts, PackageMerge.codeLengths(counts, maxLength));
+                assertTrue(cost >= previous, "round " + round + ", limit " + maxLength);
+                previous = cost;
+            }
+        }
+    }
+
+    @Test
+    void limitedCodesDecode() throws IOException {
+        // Fibonacci counts give the deepest tree there is, which the limit has to flatten
+        long[] counts = new long[Histogram.SYMBOLS];
+        long a = 1;
+        long b = 1;
+        for (int s = 0; s < 40; s++) {
+            counts[s] = a;
+            long next = a + b;
+            a = b;
+            b = next;
+        }
+        CodeTable table = CodeTable.fromLengths(PackageMerge.codeLengths(counts, 12));
+        long[] codes = table.getCodes();
+        int[] lengths = table.getLengths();
+
+        byte[] data = new byte[400];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i % 40);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (BitWriter bits = new BitWriter(encoded)) {
+            for (byte symbol : data) bits.write(codes[symbol], lengths[symbol]);
+        }
+
+        byte[] decoded = new byte[data.length];
+        BitReader in = new BitReader(new ByteArrayInputStream(encoded.toByteArray()));
+        assertEquals(data.length, new TableDecoder(codes, lengths).decode(in, decoded, 0, data.length));
+        assertArrayEquals(data, decoded);
+    }
+
+    @Test
+    void rejectsLimitsTooShortForTheSymbols() {
+        long[] counts = new long[Histogram.SYMBOLS];
+        counts['a'] = 5;
+        counts['b'] = 3;
+        counts['c'] = 1;
+        assertThrows(IllegalArgumentException.class, () -> PackageMerge.codeLengths(counts, 1));
+        assertEquals(2, PackageMerge.codeLengths(counts, 2)['c']);
+    }
+
+    // Counts that are uniform, skewed or sparse, depending on the round
+    private static long[] counts(Random random, int round) {
+        long[] counts = new long[Histogram.SYMBOLS];
+        int symbols = round % 3 == 0 ? Histogram.SYMBOLS : 2 + random.nextInt(60);
+        for (int i = 0; i < symbols; i++) {
+            int s = symbols == Histogram.SYMBOLS ? i : random.nextInt(Histogram.SYMBOLS);
+            counts[s] += round % 3 == 1 ? 1 + random.nextInt(10) : 1 + (long) Math.pow(random.nextInt(40), 4);
+        }
+        // At least two symbols, in case the sparse rounds picked the same one twice
+        counts[0] += 1;
+        counts[255] += 1;
+        return counts;
+    }
+
+    private static int symbols(long[] counts) {
+        int symbols = 0;
+        for (long count : counts) {
+            if (count > 0) symbols++;
+        }
+        return symbols;
+    }
+
+    private static long cost(long[] counts, int[] lengths) {
+        long cost = 0;
+        for (int s = 0; s < counts.length; s++) cost += counts[s] * lengths[s];
+        return cost;
+    }
+
+    // The cost of a huffman code is the sum of the weights of the merged nodes
+    private static long huffmanCost(long[] counts) {
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        for (long count : counts) {
+            if (count > 0) queue.add(count);
+        }
+        long cost = 0;
+        while (queue.size() > 1) {
+            long merged = queue.poll() + queue.poll();
+            cost += merged;
+            queue.add(merged);
+        }
+        return cost;
+    }
+}
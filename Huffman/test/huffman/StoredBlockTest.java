@@ -0,0 +1,184 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Blocks that coding wouldn't make enough smaller are stored, by every
+ * writer of the container format, with or without a trained table
+ */
+class StoredBlockTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    private static TrainedTable trained() {
+        long[] counts = new long[Histogram.SYMBOLS];
+        byte[] sample = TestData.text(50000, 80);
+        Histogram.count(sample, 0, sample.length, counts);
+        return TrainedTable.train(4, counts);
+    }
+
+    @Test
+    void codecStoresRandomBlocks() throws IOException {
+        // 6 blocks, of which the two in the middle are random
+        byte[] data = TestData.mixed(6 * BLOCK_SIZE, 81);
+        for (TrainedTable table : new TrainedTable[] { null, trained() }) {
+            HuffmanCodec codec = new HuffmanCodec();
+            codec.setBlockSize(BLOCK_SIZE);
+            codec.setTrainedTable(table);
+            byte[] encoded = codec.encode(data);
+            assertEquals(2, countStored(encoded));
+            assertArrayEquals(data, codec.decode(encoded));
+        }
+    }
+
+    @Test
+    void minimumSavingDecides() throws IOException {
+        byte[] data = TestData.text(4 * BLOCK_SIZE, 82);
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(BLOCK_SIZE);
+        codec.setMinimumSaving(1);
+        assertEquals(4, countStored(codec.encode(data)));
+        codec.setMinimumSaving(0);
+        assertEquals(0, countStored(codec.encode(data)));
+        assertThrows(IllegalArgumentException.class, () -> codec.setMinimumSaving(1.5));
+    }
+
+    @Test
+    void parallelEncoderStoresLikeTheCodec() throws IOException {
+        byte[] data = TestData.mixed(12 * BLOCK_SIZE, 83);
+        for (TrainedTable table : new TrainedTable[] { null, trained() }) {
+            HuffmanCodec codec = new HuffmanCodec();
+            codec.setBlockSize(BLOCK_SIZE);
+            codec.setTrainedTable(table);
+            byte[] expected = codec.encode(data);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ParallelEncoder encoder = new ParallelEncoder(2, BLOCK_SIZE, false, table)) {
+                encoder.encode(new ByteArrayInputStream(data), out);
+            }
+            assertArrayEquals(expected, out.toByteArray());
+
+            out.reset();
+            try (ParallelEncoder encoder = new ParallelEncoder(2, BLOCK_SIZE, false, table)) {
+                encoder.setMinimumSaving(1);
+                encoder.encode(new ByteArrayInputStream(data), out);
+            }
+            assertEquals(12, countStored(out.toByteArray()));
+            assertArrayEquals(data, codec.decode(out.toByteArray()));
+        }
+    }
+
+    @Test
+    void writerStoresTrainedBlocks() throws IOException {
+        TrainedTable table = trained();
+        byte[] random = TestData.random(BLOCK_SIZE, 84);
+        byte[] text = TestData.text(BLOCK_SIZE, 85);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContainerWriter writer = new ContainerWriter(out, BLOCK_SIZE)) {
+            writer.writeBlock(random, 0, random.length, table);
+            writer.writeBlock(text, 0, text.length, table);
+        }
+        try (ContainerReader reader = new ContainerReader(new ByteArrayInputStream(out.toByteArray()))) {
+            reader.nextBlock();
+            assertEquals(ContainerFormat.STORED, reader.getBlockType());
+            // Stored blocks don't need the table to be read back
+            byte[] block = new byte[BLOCK_SIZE];
+            reader.readBlock(block, 0);
+            assertArrayEquals(random, block);
+            reader.nextBlock();
+            assertEquals(ContainerFormat.TRAINED, reader.getBlockType());
+        }
+    }
+
+    @Test
+    void huffmanCodingPassesMinimumSavingOn() throws IOException {
+        byte[] data = TestData.text(4 * BLOCK_SIZE, 86);
+        Path input = Files.write(dir.resolve("input"), data);
+        Path encoded = dir.resolve("encoded");
+        Path decoded = dir.resolve("decoded");
+
+        HuffmanCoding coding = new HuffmanCoding(input.toString());
+        coding.setFormat(HuffmanCoding.Format.CONTAINER);
+        coding.setBlockSize(BLOCK_SIZE);
+        coding.setMinimumSaving(1);
+        coding.encode(encoded.toString());
+        assertEquals(4, countStored(Files.readAllBytes(encoded)));
+
+        coding.setDecoderThreads(2);
+        coding.decode(encoded.toString(), decoded.toString());
+        assertArrayEquals(data, Files.readAllBytes(decoded));
+    }
+
+    @Test
+    void channelCodecTransfersStoredBlocks() throws IOException {
+        byte[] data = TestData.mixed(6 * BLOCK_SIZE + 50, 88);
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(BLOCK_SIZE);
+        ChannelCodec channels = new ChannelCodec(codec);
+        Path source = Files.write(dir.resolve("source"), data);
+        Path encoded = dir.resolve("encoded");
+
+        // Between files, from wherever the input channel is
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(encoded, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            in.position(50);
+            channels.encode(in, out);
+        }
+        byte[] expected = codec.encode(Arrays.copyOfRange(data, 50, data.length));
+        assertEquals(2, countStored(expected));
+        assertArrayEquals(expected, Files.readAllBytes(encoded));
+
+        // And to a channel that isn't a file
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            channels.encode(in, Channels.newChannel(out));
+        }
+        assertArrayEquals(codec.encode(data), out.toByteArray());
+
+        Path decoded = dir.resolve("decoded");
+        channels.decode(encoded, decoded);
+        assertArrayEquals(Arrays.copyOfRange(data, 50, data.length), Files.readAllBytes(decoded));
+    }
+
+    @Test
+    void corruptStoredBlocksAreRejected() throws IOException {
+        HuffmanCodec codec = new HuffmanCodec();
+        codec.setBlockSize(BLOCK_SIZE);
+        byte[] encoded = codec.encode(TestData.random(2 * BLOCK_SIZE, 87));
+        encoded[ContainerFormat.HEADER_SIZE + ContainerFormat.BLOCK_HEADER_SIZE + 100] ^= 1;
+        assertThrows(IOException.class, () -> codec.decode(encoded));
+
+        // The channel codec checks the block before any of it reaches the output
+        Path source = Files.write(dir.resolve("corrupt"), encoded);
+        Path target = dir.resolve("decoded");
+        assertThrows(IOException.class, () -> new ChannelCodec(codec).decode(source, target));
+        assertEquals(0, Files.size(target));
+    }
+
+    private static int countStored(byte[] encoded) throws IOException {
+        int stored = 0;
+        try (ContainerReader reader = new ContainerReader(new ByteArrayInputStream(encoded))) {
+            while (reader.nextBlock()) {
+                if (reader.getBlockType() == ContainerFormat.STORED) stored++;
+            }
+        }
+        return stored;
+    }
+}
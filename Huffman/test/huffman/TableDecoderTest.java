@@ -0,0 +1,133 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that TableDecoder gives back what was encoded, for codes that fit
+ * in the first table level and codes that need more levels
+ */
+class TableDecoderTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void decodesTreeCodes() throws IOException {
+        Random random = new Random(20);
+        for (int round = 0; round < 10; round++) {
+            byte[] data = TestData.text(1000 + random.nextInt(20000), round);
+            Path input = Files.write(dir.resolve("input.txt"), data);
+            HuffmanCoding coding = new HuffmanCoding(input.toString());
+            coding.makeSortedList();
+            coding.makeTree();
+            coding.makeEncodings();
+
+            // The tree's own codes, as numbers and lengths
+            String[] encodings = coding.getEncodings();
+            long[] codes = new long[encodings.length];
+            int[] lengths = new int[encodings.length];
+            for (int s = 0; s < encodings.length; s++) {
+                if (encodings[s] == null) continue;
+                codes[s] = Long.parseLong(encodings[s], 2);
+                lengths[s] = encodings[s].length();
+            }
+            byte[] encoded = encode(codes, lengths, data);
+            TableDecoder decoder = new TableDecoder(codes, lengths);
+            assertArrayEquals(data, decodeInChunks(decoder, encoded, data.length, random), "round " + round);
+        }
+    }
+
+    @Test
+    void longCodes() throws IOException {
+        // Symbol s has s 1 bits and then a 0, up to the last two, which take 39 bits
+        // each, so codes go through several table levels
+        long[] codes = new long[Histogram.SYMBOLS];
+        int[] lengths = new int[Histogram.SYMBOLS];
+        for (int s = 0; s < 40; s++) {
+            lengths[s] = Math.min(s + 1, 39);
+            codes[s] = s < 39 ? ((1L << s) - 1) << 1 : (1L << 39) - 1;
+        }
+        byte[] data = new byte[80];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i % 40);
+        byte[] encoded = encode(codes, lengths, data);
+        assertArrayEquals(data, decode(new TableDecoder(codes, lengths), encoded, data.length));
+    }
+
+    @Test
+    void singleSymbol() throws IOException {
+        long[] codes = new long[Histogram.SYMBOLS];
+        int[] lengths = new int[Histogram.SYMBOLS];
+        lengths['q'] = 1;
+        byte[] data = "qqqqqqqqqqq".getBytes();
+        byte[] encoded = encode(codes, lengths, data);
+        assertArrayEquals(data, decode(new TableDecoder(codes, lengths), encoded, data.length));
+    }
+
+    @Test
+    void emptyCode() throws IOException {
+        // An empty file's code, which has nothing to decode
+        TableDecoder decoder = new TableDecoder(new long[Histogram.SYMBOLS], new int[Histogram.SYMBOLS]);
+        BitReader in = new BitReader(new ByteArrayInputStream(new byte[0]));
+        assertEquals(-1, decoder.decode(in, new byte[1], 0, 1));
+    }
+
+    @Test
+    void bitsOffTheCodeAreRejected() throws IOException {
+        // 0, 10 and 110000000000, so 111 starts no code in the first table, and
+        // 110000000001 none in the second
+        long[] codes = new long[Histogram.SYMBOLS];
+        int[] lengths = new int[Histogram.SYMBOLS];
+        lengths['a'] = 1;
+        codes['b'] = 0b10;
+        lengths['b'] = 2;
+        codes['c'] = 0b110000000000;
+        lengths['c'] = 12;
+        TableDecoder decoder = new TableDecoder(codes, lengths);
+        assertArrayEquals("abca".getBytes(), decode(decoder, new byte[] { 0x58, 0x00 }, 4));
+
+        assertThrows(IOException.class, () -> decode(decoder, new byte[] { (byte) 0xE0, 0x00 }, 1));
+        assertThrows(IOException.class, () -> decode(decoder, new byte[] { (byte) 0xC0, 0x10 }, 1));
+        // Ending part way through a code is running out of bits, not a bad code
+        assertEquals(-1, decoder.decode(new BitReader(new ByteArrayInputStream(new byte[] { (byte) 0xC0 })),
+                new byte[1], 0, 1));
+
+        TableDecoder empty = new TableDecoder(new long[Histogram.SYMBOLS], new int[Histogram.SYMBOLS]);
+        assertThrows(IOException.class, () -> decode(empty, new byte[] { 0x00 }, 1));
+    }
+
+    private static byte[] encode(long[] codes, int[] lengths, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BitWriter bits = new BitWriter(out)) {
+            for (byte b : data) bits.write(codes[b & 0xFF], lengths[b & 0xFF]);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(TableDecoder decoder, byte[] encoded, int length) throws IOException {
+        byte[] out = new byte[length];
+        assertEquals(length, decoder.decode(new BitReader(new ByteArrayInputStream(encoded)), out, 0, length));
+        return out;
+    }
+
+    // Decodes a few symbols at a time from one reader, as the streaming decoders do
+    private static byte[] decodeInChunks(TableDecoder decoder, byte[] encoded, int length, Random random)
+            throws IOException {
+        BitReader in = new BitReader(new ByteArrayInputStream(encoded));
+        byte[] out = new byte[length];
+        for (int position = 0; position < length; ) {
+            position += decoder.decode(in, out, position, Math.min(length - position, 1 + random.nextInt(700)));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,43 @@
+package huffman;
+
+import java.util.Random;
+
+/**
+ * Inputs shared by the tests, made from a fixed seed so failures repeat
+ */
+final class TestData {
+    private TestData() { }
+
+    /**
+     * @return length bytes of skewed, text-like data that codes well
+     */
+    static byte[] text(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            // A few letters take most of the data, the rest of the alphabet shows up rarely
+            double x = random.nextDouble();
+            data[i] = (byte) ('a' + (int) (26 * x * x * x));
+        }
+        return data;
+    }
+
+    /**
+     * @return length uniformly random bytes, which coding can't make smaller
+     */
+    static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * @return Text with random bytes of every value in its middle third
+     */
+    static byte[] mixed(int length, long seed) {
+        byte[] data = text(length, seed);
+        byte[] noise = random(length / 3, seed + 1);
+        System.arraycopy(noise, 0, data, length / 3, noise.length);
+        return data;
+    }
+}
@@ -0,0 +1,164 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Trained tables, the library they are found in, and containers coded
+ * with them
+ */
+class TrainedTableTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    private static TrainedTable train(int id, long seed) {
+        long[] counts = new long[Histogram.SYMBOLS];
+        byte[] sample = TestData.text(50000, seed);
+        Histogram.count(sample, 0, sample.length, counts);
+        return TrainedTable.train(id, counts);
+    }
+
+    @Test
+    void everyByteHasACode() {
+        TrainedTable table = train(1, 40);
+        for (int length : table.getCodeTable().getLengths()) {
+            assertTrue(length > 0 && length <= TrainedTable.DEFAULT_MAX_LENGTH, "length " + length);
+        }
+    }
+
+    @Test
+    void savedTablesLoadBack() throws IOException {
+        TrainedTable table = train(7, 41);
+        Path file = dir.resolve("seven" + TableLibrary.EXTENSION);
+        table.save(file);
+        TrainedTable loaded = TrainedTable.load(file);
+        assertEquals(7, loaded.getId());
+        assertTrue(loaded.sameCode(table));
+        assertArrayEquals(table.getCodeTable().getLengths(), loaded.getCodeTable().getLengths());
+
+        byte[] corrupt = Files.readAllBytes(file);
+        corrupt[0] ^= 1;
+        Files.write(file, corrupt);
+        assertThrows(IOException.class, () -> TrainedTable.load(file));
+    }
+
+    @Test
+    void libraryLoadsDirectory() throws IOException {
+        train(1, 42).save(dir.resolve("one" + TableLibrary.EXTENSION));
+        train(2, 43).save(dir.resolve("two" + TableLibrary.EXTENSION));
+        Files.write(dir.resolve("notes.txt"), new byte[] { 1, 2, 3 });
+
+        TableLibrary library = new TableLibrary();
+        assertEquals(2, library.loadDirectory(dir));
+        assertEquals(2, library.size());
+        assertEquals(1, library.get(1).getId());
+        assertNull(library.get(3));
+        assertThrows(IOException.class, () -> library.require(3));
+    }
+
+    @Test
+    void libraryRejectsAnotherCodeUnderTheSameId() {
+        TableLibrary library = new TableLibrary();
+        TrainedTable table = train(5, 44);
+        library.register(table);
+        library.register(train(5, 44));
+        assertSame(table, library.get(5));
+
+        long[] flat = new long[Histogram.SYMBOLS];
+        assertThrows(IllegalArgumentException.class, () -> library.register(TrainedTable.train(5, flat)));
+    }
+
+    @Test
+    void containerRoundTrip() throws IOException {
+        TrainedTable table = train(9, 45);
+        byte[] data = TestData.text(5 * BLOCK_SIZE + 11, 46);
+        byte[] encoded = encode(data, table);
+        assertEquals(ContainerFormat.TRAINED, encoded[ContainerFormat.HEADER_SIZE]);
+        // Only the ID is carried, not the code
+        assertEquals(9, ByteBuffer.wrap(encoded).getInt(ContainerFormat.HEADER_SIZE + ContainerFormat.BLOCK_HEADER_SIZE));
+
+        // A reader that doesn't know the table can't decode the data
+        IOException e = assertThrows(IOException.class, () -> decode(encoded, new TableLibrary()));
+        assertTrue(e.getMessage().contains("9"), e.getMessage());
+
+        // One that loads it from the library can
+        table.save(dir.resolve("nine" + TableLibrary.EXTENSION));
+        TableLibrary library = new TableLibrary();
+        library.loadDirectory(dir);
+        assertArrayEquals(data, decode(encoded, library));
+    }
+
+    @Test
+    void containerRejectsCorruptTrainedBlocks() throws IOException {
+        TrainedTable table = train(3, 47);
+        TableLibrary library = new TableLibrary();
+        library.register(table);
+        byte[] encoded = encode(TestData.text(BLOCK_SIZE, 48), table);
+
+        int payload = ContainerFormat.HEADER_SIZE + ContainerFormat.BLOCK_HEADER_SIZE;
+        byte[] wrongId = encoded.clone();
+        wrongId[payload + 3] ^= 1;
+        assertThrows(IOException.class, () -> decode(wrongId, library));
+        byte[] wrongCodes = encoded.clone();
+        wrongCodes[payload + 20] ^= 0x21;
+        assertThrows(IOException.class, () -> decode(wrongCodes, library));
+    }
+
+    @Test
+    void huffmanCodingRoundTrip() throws IOException {
+        TrainedTable table = train(11, 49);
+        Path input = Files.write(dir.resolve("input.txt"), TestData.text(3 * BLOCK_SIZE, 50));
+
+        HuffmanCoding encoder = new HuffmanCoding(input.toString());
+        encoder.setFormat(HuffmanCoding.Format.CONTAINER);
+        encoder.setBlockSize(BLOCK_SIZE);
+        encoder.setTrainedTable(table);
+        encoder.encode(dir.resolve("encoded").toString());
+
+        TableLibrary library = new TableLibrary();
+        library.register(table);
+        HuffmanCoding decoder = new HuffmanCoding(input.toString());
+        decoder.setFormat(HuffmanCoding.Format.CONTAINER);
+        decoder.setTableLibrary(library);
+        decoder.setDecoderThreads(2);
+        decoder.decode(dir.resolve("encoded").toString(), dir.resolve("decoded").toString());
+        assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(dir.resolve("decoded")));
+    }
+
+    private static byte[] encode(byte[] data, TrainedTable table) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContainerWriter writer = new ContainerWriter(out, BLOCK_SIZE)) {
+            for (int start = 0; start < data.length; start += BLOCK_SIZE) {
+                writer.writeBlock(data, start, Math.min(BLOCK_SIZE, data.length - start), table);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(byte[] encoded, TableLibrary library) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContainerReader reader = new ContainerReader(new ByteArrayInputStream(encoded), library)) {
+            while (reader.nextBlock()) {
+                byte[] block = new byte[reader.getOriginalSize()];
+                out.write(block, 0, reader.readBlock(block, 0));
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,96 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the trees TreeBuilder makes: optimal, with the same ties as the
+ * old queue merge, and laid out with children before their parents
+ */
+class TreeBuilderTest {
+    @Test
+    void costsTheSameAsAnyHuffmanCode() {
+        Random random = new Random(90);
+        for (int round = 0; round < 40; round++) {
+            long[] counts = new long[Histogram.SYMBOLS];
+            int symbols = 2 + random.nextInt(Histogram.SYMBOLS - 1);
+            for (int i = 0; i < symbols; i++) {
+                counts[random.nextInt(Histogram.SYMBOLS)] += 1 + (long) Math.pow(random.nextInt(40), round % 5);
+            }
+            int[] lengths = TreeBuilder.fromCounts(counts).codeLengths(Histogram.SYMBOLS);
+            int[] merged = PackageMerge.codeLengths(counts, 62);
+            assertEquals(cost(counts, merged), cost(counts, lengths), "round " + round);
+        }
+    }
+
+    @Test
+    void leafWinsTies() {
+        // a and b make a node of weight 2, the same as c, so c comes out of the queues first
+        TreeBuilder tree = TreeBuilder.fromSortedLeaves(new int[] { 'a', 'b', 'c' }, new long[] { 1, 1, 2 });
+        int root = tree.getRoot();
+        assertEquals(4, tree.getWeight(root));
+        assertTrue(tree.isLeaf(tree.getLeft(root)));
+        assertEquals('c', tree.getSymbol(tree.getLeft(root)));
+        assertEquals(2, tree.getWeight(tree.getRight(root)));
+    }
+
+    @Test
+    void childrenComeBeforeParents() {
+        long[] counts = new long[Histogram.SYMBOLS];
+        byte[] data = TestData.text(5000, 91);
+        Histogram.count(data, 0, data.length, counts);
+        TreeBuilder tree = TreeBuilder.fromCounts(counts);
+        for (int node = tree.getLeafCount(); node <= tree.getRoot(); node++) {
+            assertTrue(tree.getLeft(node) < node && tree.getRight(node) < node, "node " + node);
+            assertEquals(tree.getWeight(tree.getLeft(node)) + tree.getWeight(tree.getRight(node)), tree.getWeight(node));
+        }
+        assertEquals(data.length, tree.getWeight(tree.getRoot()));
+    }
+
+    @Test
+    void deepestTree() {
+        // Fibonacci counts make every merge take the last merged node, one level deeper each time
+        long[] counts = new long[Histogram.SYMBOLS];
+        long a = 1;
+        long b = 1;
+        for (int s = 0; s < 40; s++) {
+            counts[s] = a;
+            long next = a + b;
+            a = b;
+            b = next;
+        }
+        int[] lengths = TreeBuilder.fromCounts(counts).codeLengths(Histogram.SYMBOLS);
+        assertEquals(39, lengths[0]);
+        assertEquals(39, lengths[1]);
+        for (int s = 2; s < 40; s++) assertEquals(40 - s, lengths[s], "symbol " + s);
+    }
+
+    @Test
+    void loneSymbol() {
+        long[] counts = new long[Histogram.SYMBOLS];
+        counts['q'] = 12;
+        TreeBuilder tree = TreeBuilder.fromCounts(counts);
+        assertEquals(0, tree.getRoot());
+        assertEquals(1, tree.codeLengths(Histogram.SYMBOLS)['q']);
+        assertEquals(-1, TreeBuilder.fromCounts(new long[Histogram.SYMBOLS]).getRoot());
+    }
+
+    @Test
+    void rejectsUnsortedLeaves() {
+        assertThrows(IllegalArgumentException.class,
+                () -> TreeBuilder.fromSortedLeaves(new int[] { 'a', 'b' }, new long[] { 2, 1 }));
+        assertThrows(IllegalArgumentException.class,
+                () -> TreeBuilder.fromSortedLeaves(new int[] { 'a', 'b' }, new long[] { 1 }));
+    }
+
+    private static long cost(long[] counts, int[] lengths) {
+        long cost = 0;
+        for (int s = 0; s < counts.length; s++) cost += counts[s] * lengths[s];
+        return cost;
+    }
+}
@@ -0,0 +1,30 @@
+package huffman.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the input bytes processed by a benchmark, so that next to ops/s
+ * JMH also reports a megabytes counter, which in throughput mode is MB/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Bytes {
+    private long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+    }
+
+    void add(long count) {
+        bytes += count;
+    }
+
+    public double megabytes() {
+        return bytes / (double) (1 << 20);
+    }
+}
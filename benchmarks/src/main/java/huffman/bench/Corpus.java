@@ -0,0 +1,122 @@
+package huffman.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Finds the file behind a corpus name. Names ending in .txt are the inputs
+ * bundled with the project; any other name is kind-size, for example
+ * zipf-1MB, and is generated once into the temp directory and reused by
+ * every later run.
+ *
+ * Kinds: uniform (printable ASCII, every letter equally likely), zipf (all
+ * 256 bytes, skewed like natural text), single (one repeated byte) and
+ * random (uniform over all 256 bytes, which huffman can't compress).
+ * Sizes: a number followed by KB, MB or GB.
+ */
+final class Corpus {
+    // Where the bundled inputs are, overridden with -Dhuffman.inputs=<dir>
+    private static final String INPUTS = "huffman.inputs";
+
+    // Every run generates the same bytes
+    private static final long SEED = 0x48554646L;
+
+    private Corpus() { }
+
+    /**
+     * @return The file holding the corpus, generated first if needed
+     */
+    static Path resolve(String name) throws IOException {
+        if (name.endsWith(".txt")) return bundled(name);
+
+        int dash = name.indexOf('-');
+        if (dash < 0) throw new IllegalArgumentException("Unknown corpus " + name);
+        String kind = name.substring(0, dash);
+        long size = parseSize(name.substring(dash + 1));
+
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "huffman-bench-" + name);
+        if (Files.exists(file) && Files.size(file) == size) return file;
+
+        Path partial = Files.createTempFile(file.getParent(), "huffman-bench-", ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16)) {
+            generate(kind, size, out);
+        }
+        Files.move(partial, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    private static Path bundled(String name) throws IOException {
+        String dir = System.getProperty(INPUTS);
+        Path[] candidates = dir != null
+                ? new Path[] { Paths.get(dir, name) }
+                : new Path[] { Paths.get("Huffman", name), Paths.get("..", "Huffman", name), Paths.get(name) };
+        for (Path candidate : candidates) {
+            if (Files.isRegularFile(candidate)) return candidate;
+        }
+        throw new IOException("Could not find " + name + ", set -D" + INPUTS + "=<dir>");
+    }
+
+    static long parseSize(String size) {
+        long unit;
+        if (size.endsWith("KB")) unit = 1L << 10;
+        else if (size.endsWith("MB")) unit = 1L << 20;
+        else if (size.endsWith("GB")) unit = 1L << 30;
+        else throw new IllegalArgumentException("Sizes end in KB, MB or GB: " + size);
+        return Long.parseLong(size.substring(0, size.length() - 2)) * unit;
+    }
+
+    private static void generate(String kind, long size, OutputStream out) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED);
+        double[] zipf = kind.equals("zipf") ? zipfCumulative(256) : null;
+        byte[] chunk = new byte[1 << 16];
+
+        for (long written = 0; written < size; written += chunk.length) {
+            for (int i = 0; i < chunk.length; i++) {
+                switch (kind) {
+                    case "uniform":
+                        chunk[i] = (byte) ('a' + random.nextInt(26));
+                        break;
+                    case "zipf":
+                        chunk[i] = (byte) search(zipf, random.nextDouble());
+                        break;
+                    case "single":
+                        chunk[i] = 'a';
+                        break;
+                    case "random":
+                        chunk[i] = (byte) random.nextInt(256);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown corpus kind " + kind);
+                }
+            }
+            out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+        }
+    }
+
+    // Cumulative probabilities of ranks 1 to n with weight 1 / rank
+    private static double[] zipfCumulative(int n) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 1; rank <= n; rank++) {
+            sum += 1.0 / rank;
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) cumulative[i] /= sum;
+        return cumulative;
+    }
+
+    private static int search(double[] cumulative, double value) {
+        int low = 0, high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < value) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+}
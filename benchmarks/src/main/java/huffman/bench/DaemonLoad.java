@@ -0,0 +1,105 @@
+package huffman.bench;
+
+import huffman.CodeTableCache;
+import huffman.CompressionClient;
+import huffman.CompressionServer;
+import huffman.HuffmanCodec;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Puts load on a CompressionServer and reports request latencies. Every
+ * client has its own connection and compresses random slices of a corpus,
+ * then decompresses the result and checks it. Without an address, a server
+ * is started in this JVM on a Unix domain socket in the temp directory.
+ *
+ * java -cp benchmarks/target/benchmarks.jar huffman.bench.DaemonLoad
+ *     [clients] [requests per client] [slice size] [corpus] [socket path | port]
+ */
+public class DaemonLoad {
+    // Requests per client not measured, while the server warms up
+    private static final int WARMUP = 200;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int sliceSize = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        String corpus = args.length > 3 ? args[3] : "zipf-1MB";
+        byte[] data = Files.readAllBytes(Corpus.resolve(corpus));
+        if (sliceSize > data.length) throw new IllegalArgumentException("The corpus is smaller than a slice");
+
+        CompressionServer server = null;
+        SocketAddress address;
+        if (args.length > 4) {
+            address = CompressionServer.address(args[4]);
+        } else {
+            Path socket = Files.createTempDirectory("huffman-daemon-").resolve("socket");
+            HuffmanCodec codec = new HuffmanCodec();
+            codec.setCodeTableCache(new CodeTableCache(256, 0.01));
+            server = new CompressionServer(CompressionServer.address(socket.toString()), codec).start();
+            address = server.getAddress();
+        }
+
+        long[][] compress = new long[clients][requests];
+        long[][] decompress = new long[clients][requests];
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> results = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            results.add(pool.submit(() -> {
+                SplittableRandom random = new SplittableRandom(client);
+                try (CompressionClient connection = new CompressionClient(address)) {
+                    start.await();
+                    for (int i = -WARMUP; i < requests; i++) {
+                        int offset = random.nextInt(data.length - sliceSize + 1);
+                        long begin = System.nanoTime();
+                        byte[] encoded = connection.compress(data, offset, sliceSize);
+                        long middle = System.nanoTime();
+                        byte[] decoded = connection.decompress(encoded);
+                        long end = System.nanoTime();
+                        if (!Arrays.equals(decoded, 0, sliceSize, data, offset, offset + sliceSize)) {
+                            throw new IllegalStateException("Round trip didn't match");
+                        }
+                        if (i >= 0) {
+                            compress[client][i] = middle - begin;
+                            decompress[client][i] = end - middle;
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> result : results) result.get();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        pool.shutdown();
+        if (server != null) server.close();
+
+        System.out.printf("%d clients, %d requests each, %d byte slices of %s%n", clients, requests, sliceSize, corpus);
+        report("compress", compress);
+        report("decompress", decompress);
+        System.out.printf("%.0f round trips/s%n", clients * (double) (requests + WARMUP) / seconds);
+    }
+
+    private static void report(String name, long[][] latencies) {
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%-10s p50 %7.1f us  p99 %7.1f us  p99.9 %7.1f us  max %7.1f us%n", name,
+                percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1e3);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e3;
+    }
+}
@@ -0,0 +1,95 @@
+package huffman.bench;
+
+import huffman.ContainerFormat;
+import huffman.Histogram;
+import huffman.ParallelDecoder;
+import huffman.ParallelEncoder;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how the parallel parts scale with the number of threads: the
+ * chunked histogram, and container encode and decode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ParallelBenchmark {
+    @Param({ "zipf-64MB", "random-64MB" })
+    public String corpus;
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    private Path input;
+    private long size;
+    private Path encoded;
+    private Path decoded;
+    private ParallelEncoder encoder;
+    private ParallelDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        input = Corpus.resolve(corpus);
+        size = Files.size(input);
+        encoded = Files.createTempFile("huffman-bench-", ".encoded");
+        decoded = Files.createTempFile("huffman-bench-", ".decoded");
+        encoder = new ParallelEncoder(threads, ContainerFormat.DEFAULT_BLOCK_SIZE, true);
+        decoder = new ParallelDecoder(threads);
+        encodeContainer();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        encoder.close();
+        decoder.close();
+        Files.deleteIfExists(encoded);
+        Files.deleteIfExists(decoded);
+    }
+
+    @Benchmark
+    public long[] histogram(Bytes bytes) throws IOException {
+        bytes.add(size);
+        return Histogram.countParallel(input.toString(), threads);
+    }
+
+    @Benchmark
+    public void encodeContainer(Bytes bytes) throws IOException {
+        encodeContainer();
+        bytes.add(size);
+    }
+
+    @Benchmark
+    public void decodeContainer(Bytes bytes) throws IOException {
+        decoder.decode(encoded, decoded);
+        bytes.add(size);
+    }
+
+    private void encodeContainer() throws IOException {
+        try (InputStream in = Files.newInputStream(input);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(encoded), 1 << 16)) {
+            encoder.encode(in, out);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package huffman.bench;
+
+import huffman.HuffmanCoding;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures every phase of HuffmanCoding on its own, in the order the driver
+ * runs them. Before the measurement every phase is run once, so each
+ * benchmark only repeats its own phase on ready made input.
+ *
+ * The default corpora are small enough for a quick run; larger ones are
+ * picked on the command line, for example
+ * java -jar benchmarks/target/benchmarks.jar PhaseBenchmark -p corpus=zipf-1GB -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhaseBenchmark {
+    @Param({ "input1.txt", "input2.txt", "input3.txt", "input4.txt", "input5.txt", "input6.txt",
+             "uniform-1KB", "zipf-1KB", "single-1KB", "random-1KB",
+             "uniform-1MB", "zipf-1MB", "single-1MB", "random-1MB" })
+    public String corpus;
+
+    private HuffmanCoding coding;
+    private long size;
+    private Path encoded;
+    private Path decoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path input = Corpus.resolve(corpus);
+        size = Files.size(input);
+        encoded = Files.createTempFile("huffman-bench-", ".encoded");
+        decoded = Files.createTempFile("huffman-bench-", ".decoded");
+
+        coding = new HuffmanCoding(input.toString());
+        coding.makeSortedList();
+        coding.makeTree();
+        coding.makeEncodings();
+        coding.encode(encoded.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(encoded);
+        Files.deleteIfExists(decoded);
+    }
+
+    @Benchmark
+    public ArrayList<?> makeSortedList(Bytes bytes) {
+        coding.makeSortedList();
+        bytes.add(size);
+        return coding.getSortedCharFreqList();
+    }
+
+    @Benchmark
+    public void makeTree() {
+        coding.makeTree();
+    }
+
+    @Benchmark
+    public void makeTreeLimited() {
+        coding.makeTree(12);
+    }
+
+    @Benchmark
+    public String[] makeEncodings() {
+        coding.makeEncodings();
+        return coding.getEncodings();
+    }
+
+    @Benchmark
+    public void encode(Bytes bytes) {
+        coding.encode(encoded.toString());
+        bytes.add(size);
+    }
+
+    @Benchmark
+    public void decodeTree(Bytes bytes) {
+        coding.setDecodeEngine(HuffmanCoding.DecodeEngine.TREE);
+        coding.decode(encoded.toString(), decoded.toString());
+        bytes.add(size);
+    }
+
+    @Benchmark
+    public void decodeNodes(Bytes bytes) {
+        coding.setDecodeEngine(HuffmanCoding.DecodeEngine.NODES);
+        coding.decode(encoded.toString(), decoded.toString());
+        bytes.add(size);
+    }
+
+    @Benchmark
+    public void decodeTable(Bytes bytes) {
+        coding.setDecodeEngine(HuffmanCoding.DecodeEngine.TABLE);
+        coding.decode(encoded.toString(), decoded.toString());
+        bytes.add(size);
+    }
+}
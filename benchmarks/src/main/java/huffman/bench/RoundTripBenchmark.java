@@ -0,0 +1,75 @@
+package huffman.bench;
+
+import huffman.HuffmanCoding;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the whole round trip the driver does, from a fresh HuffmanCoding
+ * through encode and decode, in every format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+    @Param({ "input1.txt", "input2.txt", "input3.txt", "input4.txt", "input5.txt", "input6.txt",
+             "uniform-1MB", "zipf-1MB", "single-1MB", "random-1MB" })
+    public String corpus;
+
+    @Param({ "BITSTRING", "CANONICAL", "CONTAINER", "ADAPTIVE" })
+    public HuffmanCoding.Format format;
+
+    @Param({ "TREE", "TABLE" })
+    public HuffmanCoding.DecodeEngine engine;
+
+    private Path input;
+    private long size;
+    private Path encoded;
+    private Path decoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        input = Corpus.resolve(corpus);
+        size = Files.size(input);
+        encoded = Files.createTempFile("huffman-bench-", ".encoded");
+        decoded = Files.createTempFile("huffman-bench-", ".decoded");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(encoded);
+        Files.deleteIfExists(decoded);
+    }
+
+    @Benchmark
+    public HuffmanCoding roundTrip(Bytes bytes) {
+        HuffmanCoding coding = new HuffmanCoding(input.toString());
+        coding.setFormat(format);
+        coding.setDecodeEngine(engine);
+        coding.makeSortedList();
+        coding.makeTree();
+        coding.makeEncodings();
+        coding.encode(encoded.toString());
+        coding.decode(encoded.toString(), decoded.toString());
+        bytes.add(size);
+        return coding;
+    }
+}